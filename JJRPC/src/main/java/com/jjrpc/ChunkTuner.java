@@ -0,0 +1,101 @@
+package com.jjrpc;
+
+import java.util.Arrays;
+
+/**Picks the getmem size for large reads on one connection. Sizes are powers of two from MIN_CHUNK up to a cap;
+ * the tuner keeps a moving average of throughput and latency for each size it has used, and every few chunks tries
+ * the size above or below the current one, moving there when it is clearly faster. Because the averages keep
+ * moving, it settles again when the link changes. A size whose average latency exceeds the budget is not used,
+ * so one large transfer leaves room between chunks for other requests on the same console.*/
+public final class ChunkTuner {
+
+    public static final int MIN_CHUNK = 16 * 1024;
+    public static final int DEFAULT_MAX_CHUNK = 512 * 1024;
+    public static final int DEFAULT_LATENCY_BUDGET_MILLIS = 50;
+
+    private static final int START_CHUNK = 64 * 1024;
+    //weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.25;
+    //chunks at the current size between probes of a neighbour
+    private static final int PROBE_INTERVAL = 6;
+    //a neighbour must be this much faster to be adopted
+    private static final double MARGIN = 1.08;
+
+    private final int[] sizes;
+    private final double[] bytesPerNano;
+    private final double[] latencyNanos;
+    private final long budgetNanos;
+    private int current;
+    private boolean probeUp = true;
+    private int sinceProbe;
+
+    public ChunkTuner() {
+        this(DEFAULT_MAX_CHUNK, DEFAULT_LATENCY_BUDGET_MILLIS);
+    }
+
+    /**@param maxChunk largest getmem sent, rounded down to a power of two and at least MIN_CHUNK
+     * @param latencyBudgetMillis longest a single chunk should take*/
+    public ChunkTuner(int maxChunk, int latencyBudgetMillis) {
+        int max = Math.max(MIN_CHUNK, Integer.highestOneBit(maxChunk));
+        int n = Integer.numberOfTrailingZeros(max) - Integer.numberOfTrailingZeros(MIN_CHUNK) + 1;
+        this.sizes = new int[n];
+        for (int i = 0; i < n; i++) sizes[i] = MIN_CHUNK << i;
+        this.bytesPerNano = new double[n];
+        this.latencyNanos = new double[n];
+        this.budgetNanos = latencyBudgetMillis * 1_000_000L;
+        this.current = indexOf(Math.min(START_CHUNK, max));
+    }
+
+    /**Size of the next chunk to request.*/
+    public synchronized int next() {
+        if (++sinceProbe < PROBE_INTERVAL) return sizes[current];
+        sinceProbe = 0;
+        //alternate directions, but never probe upwards while the current size already takes half the budget
+        boolean canUp = current + 1 < sizes.length && latencyNanos[current] < budgetNanos / 2.0;
+        boolean canDown = current > 0;
+        boolean up = canUp && (probeUp || !canDown);
+        probeUp = !probeUp;
+        if (up) return sizes[current + 1];
+        return canDown ? sizes[current - 1] : sizes[current];
+    }
+
+    /**Reports a chunk of exactly the size next() returned that completed in nanos. Partial chunks are not reported.*/
+    public synchronized void record(int size, long nanos) {
+        int i = indexOf(size);
+        if (i < 0 || nanos <= 0) return;
+        double rate = (double) size / nanos;
+        bytesPerNano[i] = bytesPerNano[i] == 0 ? rate : bytesPerNano[i] + ALPHA * (rate - bytesPerNano[i]);
+        latencyNanos[i] = latencyNanos[i] == 0 ? nanos : latencyNanos[i] + ALPHA * (nanos - latencyNanos[i]);
+        if (Math.abs(i - current) == 1) {
+            if (latencyNanos[i] <= budgetNanos && bytesPerNano[i] > bytesPerNano[current] * MARGIN) current = i;
+        } else if (i == current && latencyNanos[i] > budgetNanos && current > 0) current--;
+    }
+
+    /**The size currently settled on.*/
+    public synchronized int getChunkSize() {
+        return sizes[current];
+    }
+
+    public int getMaxChunk() {
+        return sizes[sizes.length - 1];
+    }
+
+    /**Average throughput at the current size in bytes per second, 0 before the first measurement.*/
+    public synchronized double getThroughput() {
+        return bytesPerNano[current] * 1e9;
+    }
+
+    /**Forgets all measurements and starts again from the initial size.*/
+    public synchronized void reset() {
+        Arrays.fill(bytesPerNano, 0);
+        Arrays.fill(latencyNanos, 0);
+        current = indexOf(Math.min(START_CHUNK, getMaxChunk()));
+        sinceProbe = 0;
+    }
+
+    private int indexOf(int size) {
+        if (size < MIN_CHUNK || Integer.bitCount(size) != 1) return -1;
+        int i = Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_CHUNK);
+        return i < sizes.length ? i : -1;
+    }
+}
@@ -0,0 +1,231 @@
+package com.jjrpc;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**Finds development kits on the local network. XBDM answers name-resolution datagrams on UDP port 730:
+ * a request is a type byte (1 = look up a name, 3 = any console), a length byte and the name; the reply is type 2
+ * with the console's debug name. A subnet sweep probes TCP port 730 of every host directly for networks where
+ * broadcasts do not reach. Everything found is put into a ConsoleRegistry.*/
+public final class ConsoleDiscovery {
+
+    private static final int PORT = 730;
+    private static final int NAP_LOOKUP = 1;
+    private static final int NAP_REPLY = 2;
+    private static final int NAP_WILDCARD = 3;
+    private static final int PARALLELISM = 64;
+
+    private final ConsoleRegistry registry;
+    private final ExecutorService pool;
+
+    private static final class Shared {
+        static final ConsoleDiscovery INSTANCE = new ConsoleDiscovery();
+    }
+
+    public ConsoleDiscovery() {
+        this(ConsoleRegistry.shared());
+    }
+
+    /**The instance XboxManager resolves names with, filling ConsoleRegistry.shared(); created on first use.*/
+    public static ConsoleDiscovery shared() {
+        return Shared.INSTANCE;
+    }
+
+    public ConsoleDiscovery(ConsoleRegistry registry) {
+        this.registry = registry;
+        ThreadPoolExecutor p = new ThreadPoolExecutor(PARALLELISM, PARALLELISM, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "jjrpc-discovery");
+            t.setDaemon(true);
+            return t;
+        });
+        p.allowCoreThreadTimeOut(true);
+        this.pool = p;
+    }
+
+    /**Broadcasts a wildcard request on every IPv4 interface at once and collects replies for timeoutMillis,
+     * then asks each console for its ID in parallel.*/
+    public List<ConsoleRegistry.Entry> discover(int timeoutMillis) throws IOException {
+        Map<String, String> found = broadcast(NAP_WILDCARD, "", timeoutMillis, false);
+        return identify(found, timeoutMillis);
+    }
+
+    /**Resolves one debug name by broadcast, or returns null when no console answers within timeoutMillis.*/
+    public ConsoleRegistry.Entry resolve(String name, int timeoutMillis) throws IOException {
+        Map<String, String> found = broadcast(NAP_LOOKUP, name, timeoutMillis, true);
+        for (Map.Entry<String, String> e : found.entrySet()) {
+            if (!e.getValue().equalsIgnoreCase(name)) continue;
+            ConsoleRegistry.Entry entry = new ConsoleRegistry.Entry(e.getValue(), null, e.getKey(), System.currentTimeMillis());
+            registry.put(entry);
+            return entry;
+        }
+        return null;
+    }
+
+    /**Probes TCP port 730 on every host of an IPv4 subnet, e.g. sweep("192.168.1.0", 24, 150).
+     * Hosts that accept are asked for their debug name and console ID. Probes are queued a window at a time,
+     * so even a /16 keeps only a few hundred tasks pending. Results come back in address order.*/
+    public List<ConsoleRegistry.Entry> sweep(String network, int prefixLength, int timeoutMillis) throws IOException {
+        byte[] net = InetAddress.getByName(network).getAddress();
+        if (net.length != 4 || prefixLength < 16 || prefixLength > 30)
+            throw new IllegalArgumentException("Sweeps are limited to IPv4 subnets between /16 and /30");
+        int base = toInt(net) & (-1 << (32 - prefixLength));
+        int hosts = (1 << (32 - prefixLength)) - 2;
+        CompletionService<ConsoleRegistry.Entry> done = new ExecutorCompletionService<>(pool);
+        Map<Integer, ConsoleRegistry.Entry> found = new ConcurrentSkipListMap<>();
+        int next = 1, inFlight = 0;
+        try {
+            while (next <= hosts || inFlight > 0) {
+                for (; inFlight < 4 * PARALLELISM && next <= hosts; next++, inFlight++) {
+                    int h = next;
+                    String ip = toIp(base + h);
+                    done.submit(() -> {
+                        ConsoleRegistry.Entry e = probe(ip, null, timeoutMillis);
+                        if (e != null) found.put(h, e);
+                        return e;
+                    });
+                }
+                done.take();
+                inFlight--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    private Map<String, String> broadcast(int type, String name, int timeoutMillis, boolean firstOnly) throws IOException {
+        byte[] n = name.getBytes(StandardCharsets.US_ASCII);
+        byte[] packet = new byte[2 + n.length];
+        packet[0] = (byte) type;
+        packet[1] = (byte) n.length;
+        System.arraycopy(n, 0, packet, 2, n.length);
+        Map<String, String> found = new ConcurrentHashMap<>();
+        List<Future<?>> listeners = new ArrayList<>();
+        for (InetAddress target : broadcastAddresses()) {
+            listeners.add(pool.submit(() -> {
+                try (DatagramSocket s = new DatagramSocket()) {
+                    s.setBroadcast(true);
+                    s.send(new DatagramPacket(packet, packet.length, target, PORT));
+                    long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+                    byte[] buf = new byte[258];
+                    while (true) {
+                        long left = (deadline - System.nanoTime()) / 1_000_000L;
+                        if (left <= 0 || firstOnly && !found.isEmpty()) break;
+                        s.setSoTimeout((int) left);
+                        DatagramPacket reply = new DatagramPacket(buf, buf.length);
+                        try {
+                            s.receive(reply);
+                        } catch (SocketTimeoutException e) {
+                            break;
+                        }
+                        if (reply.getLength() < 2 || buf[0] != NAP_REPLY) continue;
+                        int len = Math.min(buf[1] & 0xFF, reply.getLength() - 2);
+                        found.put(reply.getAddress().getHostAddress(), new String(buf, 2, len, StandardCharsets.US_ASCII));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : listeners) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ignored) {
+                //an interface that cannot broadcast does not stop the others
+            }
+        }
+        return found;
+    }
+
+    private List<ConsoleRegistry.Entry> identify(Map<String, String> found, int timeoutMillis) {
+        List<Future<ConsoleRegistry.Entry>> probes = new ArrayList<>();
+        for (Map.Entry<String, String> e : found.entrySet()) {
+            probes.add(pool.submit(() -> {
+                ConsoleRegistry.Entry entry = probe(e.getKey(), e.getValue(), timeoutMillis);
+                if (entry != null) return entry;
+                entry = new ConsoleRegistry.Entry(e.getValue(), null, e.getKey(), System.currentTimeMillis());
+                registry.put(entry);
+                return entry;
+            }));
+        }
+        return collect(probes);
+    }
+
+    //asks XBDM for the debug name (unless already known) and console ID on a throwaway connection; null if nothing answers
+    private ConsoleRegistry.Entry probe(String ip, String name, int timeoutMillis) {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(ip, PORT), timeoutMillis);
+            s.setSoTimeout(Math.max(timeoutMillis, 500));
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII);
+            if (in.readLine() == null) return null;
+            if (name == null) {
+                out.write("dbgname\r\n");
+                out.flush();
+                name = value(in.readLine(), null);
+            }
+            out.write("getconsoleid\r\n");
+            out.flush();
+            String id = value(in.readLine(), "consoleid=");
+            out.write("bye\r\n");
+            out.flush();
+            ConsoleRegistry.Entry e = new ConsoleRegistry.Entry(name, id, ip, System.currentTimeMillis());
+            registry.put(e);
+            return e;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    //text after "200- ", optionally after a key=
+    private static String value(String response, String key) {
+        if (response == null || !response.startsWith("200")) return null;
+        String v = response.length() > 5 ? response.substring(5).trim() : "";
+        if (key != null) {
+            int i = v.indexOf(key);
+            if (i >= 0) v = v.substring(i + key.length()).trim();
+        }
+        return v;
+    }
+
+    private static List<ConsoleRegistry.Entry> collect(List<Future<ConsoleRegistry.Entry>> futures) {
+        List<ConsoleRegistry.Entry> out = new ArrayList<>();
+        for (Future<ConsoleRegistry.Entry> f : futures) {
+            try {
+                ConsoleRegistry.Entry e = f.get();
+                if (e != null) out.add(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ignored) {}
+        }
+        return out;
+    }
+
+    private static List<InetAddress> broadcastAddresses() throws SocketException {
+        Set<InetAddress> out = new LinkedHashSet<>();
+        for (NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!ni.isUp() || ni.isLoopback()) continue;
+            for (InterfaceAddress a : ni.getInterfaceAddresses()) {
+                if (a.getBroadcast() != null) out.add(a.getBroadcast());
+            }
+        }
+        try {
+            out.add(InetAddress.getByName("255.255.255.255"));
+        } catch (UnknownHostException ignored) {}
+        return new ArrayList<>(out);
+    }
+
+    private static int toInt(byte[] b) {
+        return (b[0] & 0xFF) << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF);
+    }
+
+    private static String toIp(int v) {
+        return (v >>> 24) + "." + (v >>> 16 & 0xFF) + "." + (v >>> 8 & 0xFF) + "." + (v & 0xFF);
+    }
+}
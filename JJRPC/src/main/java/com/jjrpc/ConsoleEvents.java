@@ -0,0 +1,120 @@
+package com.jjrpc;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.MemoryAddress;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Locale;
+
+/**JFR events for console round trips. Disabled events cost one allocation that escape analysis removes.*/
+public final class ConsoleEvents {
+
+    private ConsoleEvents() {}
+
+    @Name("com.jjrpc.Command")
+    @Label("XBDM Command")
+    @Category({"JJRPC", "Console"})
+    @Description("One text command exchange with XBDM")
+    @StackTrace(false)
+    public static final class Command extends Event {
+        @Label("Host")
+        public String host;
+
+        @Label("Verb")
+        public String verb;
+
+        @Label("Bytes Sent")
+        @DataAmount
+        public long bytesSent;
+
+        @Label("Bytes Received")
+        @DataAmount
+        public long bytesReceived;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name("com.jjrpc.Memory")
+    @Label("XBDM Memory Transfer")
+    @Category({"JJRPC", "Console"})
+    @Description("One getmem or setmem exchange with XBDM")
+    @StackTrace(false)
+    public static final class Memory extends Event {
+        @Label("Host")
+        public String host;
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("Address")
+        @MemoryAddress
+        public long address;
+
+        @Label("Length")
+        @DataAmount
+        public long length;
+
+        @Label("Bytes Transferred")
+        @DataAmount
+        public long bytes;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name("com.jjrpc.Call")
+    @Label("JRPC Call")
+    @Category({"JJRPC", "Call"})
+    @Description("One remote function call through the JRPC plugin, including buf_addr polling")
+    @StackTrace(false)
+    public static final class Call extends Event {
+        @Label("Module")
+        public String module;
+
+        @Label("Ordinal")
+        public int ordinal;
+
+        @Label("Address")
+        @MemoryAddress
+        public long address;
+
+        @Label("Return Type")
+        public long returnType;
+
+        @Label("Arguments")
+        public long arguments;
+
+        @Label("VM")
+        public boolean vm;
+
+        @Label("System Thread")
+        public boolean systemThread;
+
+        @Label("Bytes Sent")
+        @DataAmount
+        public long bytesSent;
+
+        @Label("Bytes Received")
+        @DataAmount
+        public long bytesReceived;
+
+        @Label("Buffer Polls")
+        public int polls;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    public static String verbOf(String command) {
+        if (command == null) return "";
+        String s = command.trim();
+        int sp = s.indexOf(' ');
+        return (sp < 0 ? s : s.substring(0, sp)).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,70 @@
+package com.jjrpc;
+
+import java.util.*;
+
+/**Known consoles by debug name and console ID, each forgotten when it has not been seen for the TTL.*/
+public final class ConsoleRegistry {
+
+    /**@param consoleId null until the console has answered getconsoleid*/
+    public record Entry(String name, String consoleId, String address, long seenMillis) {}
+
+    private static final ConsoleRegistry SHARED = new ConsoleRegistry(10 * 60_000L);
+
+    private final long ttlMillis;
+    private final Map<String, Entry> byName = new HashMap<>();
+    private final Map<String, Entry> byId = new HashMap<>();
+
+    public ConsoleRegistry(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**The registry XboxManager resolves names through.*/
+    public static ConsoleRegistry shared() {
+        return SHARED;
+    }
+
+    public synchronized void put(Entry e) {
+        if (e.name() != null && !e.name().isEmpty()) {
+            Entry old = byName.get(key(e.name()));
+            if (old != null && e.consoleId() == null && old.consoleId() != null && old.address().equals(e.address()))
+                e = new Entry(e.name(), old.consoleId(), e.address(), e.seenMillis());
+            byName.put(key(e.name()), e);
+        }
+        if (e.consoleId() != null && !e.consoleId().isEmpty()) byId.put(key(e.consoleId()), e);
+    }
+
+    /**Looks up a debug name or console ID, case-insensitively.*/
+    public synchronized Entry find(String nameOrId) {
+        long now = System.currentTimeMillis();
+        Entry e = byName.get(key(nameOrId));
+        if (e == null) e = byId.get(key(nameOrId));
+        if (e == null) return null;
+        if (now - e.seenMillis() > ttlMillis) {
+            remove(e);
+            return null;
+        }
+        return e;
+    }
+
+    public synchronized List<Entry> all() {
+        long now = System.currentTimeMillis();
+        Set<Entry> live = new LinkedHashSet<>();
+        for (Entry e : byName.values()) if (now - e.seenMillis() <= ttlMillis) live.add(e);
+        for (Entry e : byId.values()) if (now - e.seenMillis() <= ttlMillis) live.add(e);
+        return new ArrayList<>(live);
+    }
+
+    public synchronized void clear() {
+        byName.clear();
+        byId.clear();
+    }
+
+    private void remove(Entry e) {
+        if (e.name() != null) byName.remove(key(e.name()), e);
+        if (e.consoleId() != null) byId.remove(key(e.consoleId()), e);
+    }
+
+    private static String key(String s) {
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,95 @@
+package com.jjrpc;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**Per-console connection state used by the static JRPC methods, obtained through JRPC.SessionOf.
+ * Multi-command conversations (a call and its buf_addr polls) run under the session lock so that
+ * threads sharing a console never interleave inside one; waiting threads are served in arrival order.*/
+public final class ConsoleSession {
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Map<String, Long> resolved = new ConcurrentHashMap<>();
+    private volatile long connectionId;
+    private volatile boolean connected;
+    private volatile ChunkTuner chunkTuner;
+
+    ConsoleSession() {}
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**Returns the connection id, opening the connection first if this session has none yet.*/
+    public long connectionId(JRPC.IXboxConsole c) {
+        if (connected) return connectionId;
+        lock.lock();
+        try {
+            //another thread may have opened it while this one waited
+            return connected ? connectionId : open(c);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long open(JRPC.IXboxConsole c) {
+        lock.lock();
+        try {
+            connectionId = c.OpenConnection(null);
+            connected = true;
+            return connectionId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**Marks the connection closed so the next call opens a new one; JRPC.XbdmXboxConsole.Disconnect calls it.*/
+    public void reset() {
+        connected = false;
+    }
+
+    /**JRPC.ResolveFunction, remembered per module and ordinal until clearResolved().*/
+    public long resolveFunction(JRPC.IXboxConsole c, String module, long ordinal) {
+        String key = module.toLowerCase(Locale.ROOT) + "#" + ordinal;
+        Long addr = resolved.get(key);
+        if (addr != null) return addr;
+        long a = JRPC.ResolveFunction(c, module, ordinal);
+        resolved.put(key, a);
+        return a;
+    }
+
+    public void clearResolved() {
+        resolved.clear();
+    }
+
+    /**Sizes the getmem requests JRPC.GetMemory splits large reads into; null when reads are sent whole.
+     * JRPC.SessionOf gives socket consoles a tuner with the default cap and leaves in-process ones without.*/
+    public ChunkTuner chunkTuner() {
+        return chunkTuner;
+    }
+
+    public void setChunkTuner(ChunkTuner tuner) {
+        this.chunkTuner = tuner;
+    }
+
+    public <T> T exclusive(Supplier<T> work) {
+        lock.lock();
+        try {
+            return work.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void exclusive(Runnable work) {
+        lock.lock();
+        try {
+            work.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.jjrpc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**Table-driven hex codec for the text forms of memory transfer (getmem data=, setmem data=, byte-array call arguments).
+ * Encodes to upper case, as XBDM and the JRPC plugin expect, and decodes either case.*/
+public final class Hex {
+
+    //ENCODE[2 * b] and ENCODE[2 * b + 1] are the two digits of byte b
+    private static final byte[] ENCODE = new byte[512];
+    private static final char[] ENCODE_CHARS = new char[512];
+    //digit value of an ASCII character, -1 if it is not a hex digit
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        byte[] digits = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+        for (int b = 0; b < 256; b++) {
+            ENCODE[2 * b] = digits[b >>> 4];
+            ENCODE[2 * b + 1] = digits[b & 15];
+            ENCODE_CHARS[2 * b] = (char) digits[b >>> 4];
+            ENCODE_CHARS[2 * b + 1] = (char) digits[b & 15];
+        }
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < 10; i++) DECODE['0' + i] = (byte) i;
+        for (int i = 0; i < 6; i++) {
+            DECODE['A' + i] = (byte) (10 + i);
+            DECODE['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private Hex() {}
+
+    /**Writes 2 * len ASCII digits for src[off, off + len) into dst at dstOff.*/
+    public static void encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        for (int i = 0; i < len; i++) {
+            int b = (src[off + i] & 0xFF) << 1;
+            dst[dstOff++] = ENCODE[b];
+            dst[dstOff++] = ENCODE[b + 1];
+        }
+    }
+
+    public static String encode(byte[] src, int off, int len) {
+        byte[] out = new byte[len * 2];
+        encode(src, off, len, out, 0);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    public static String encode(byte[] src) {
+        return encode(src, 0, src.length);
+    }
+
+    public static StringBuilder append(StringBuilder sb, byte[] src, int off, int len) {
+        sb.ensureCapacity(sb.length() + len * 2);
+        for (int i = 0; i < len; i++) {
+            int b = (src[off + i] & 0xFF) << 1;
+            sb.append(ENCODE_CHARS[b]).append(ENCODE_CHARS[b + 1]);
+        }
+        return sb;
+    }
+
+    public static StringBuilder append(StringBuilder sb, byte[] src) {
+        return append(sb, src, 0, src.length);
+    }
+
+    /**Encodes the remaining bytes of src into dst as ASCII digits; dst needs twice src.remaining() bytes free.*/
+    public static void encode(ByteBuffer src, ByteBuffer dst) {
+        if (src.hasArray() && dst.hasArray()) {
+            int n = src.remaining();
+            encode(src.array(), src.arrayOffset() + src.position(), n, dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.position() + n);
+            dst.position(dst.position() + 2 * n);
+            return;
+        }
+        while (src.hasRemaining()) {
+            int b = (src.get() & 0xFF) << 1;
+            dst.put(ENCODE[b]).put(ENCODE[b + 1]);
+        }
+    }
+
+    /**Decodes up to len bytes from the digit pairs starting at hex[hexOff] into dst at dstOff.
+     * @return the number of bytes decoded, fewer than len when the digits run out or a non-hex character is met*/
+    public static int decode(CharSequence hex, int hexOff, byte[] dst, int dstOff, int len) {
+        int n = Math.min(len, (hex.length() - hexOff) / 2);
+        for (int i = 0; i < n; i++) {
+            int hi = digit(hex.charAt(hexOff + 2 * i)), lo = digit(hex.charAt(hexOff + 2 * i + 1));
+            if ((hi | lo) < 0) return i;
+            dst[dstOff + i] = (byte) (hi << 4 | lo);
+        }
+        return n;
+    }
+
+    /**As decode(CharSequence, ...) for ASCII digits held in a byte array.*/
+    public static int decode(byte[] hex, int hexOff, int hexLen, byte[] dst, int dstOff, int len) {
+        int n = Math.min(len, hexLen / 2);
+        for (int i = 0; i < n; i++) {
+            int hi = digit(hex[hexOff + 2 * i]), lo = digit(hex[hexOff + 2 * i + 1]);
+            if ((hi | lo) < 0) return i;
+            dst[dstOff + i] = (byte) (hi << 4 | lo);
+        }
+        return n;
+    }
+
+    /**Decodes digit pairs from src into dst until either runs out or a non-hex character is met.*/
+    public static void decode(ByteBuffer src, ByteBuffer dst) {
+        while (src.remaining() >= 2 && dst.hasRemaining()) {
+            int p = src.position();
+            int hi = digit(src.get(p)), lo = digit(src.get(p + 1));
+            if ((hi | lo) < 0) return;
+            dst.put((byte) (hi << 4 | lo));
+            src.position(p + 2);
+        }
+    }
+
+    public static byte[] decode(CharSequence hex) {
+        byte[] out = new byte[hex.length() / 2];
+        int n = decode(hex, 0, out, 0, out.length);
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static int digit(int c) {
+        return (c & ~0x7F) == 0 ? DECODE[c] : -1;
+    }
+}
@@ -9,6 +9,11 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public final class JRPC {
     /**Util*/
@@ -64,28 +69,90 @@ public final class JRPC {
         }
     }
 
+    /**One XBDM conversation on a connection, for commands whose replies are not plain text (screenshot, getfile, sendfile).*/
+    public interface IXboxRawConnection {
+        void writeLine(String line) throws IOException;
+        void write(byte[] b, int off, int len) throws IOException;
+        void flush() throws IOException;
+        String readLine() throws IOException;
+        void readFully(byte[] b, int off, int len) throws IOException;
+    }
+
+    public interface Conversation<T> {
+        T run(IXboxRawConnection link) throws IOException;
+    }
+
+    /**A console that can hand its connection to a Conversation. Nothing else uses the connection until the conversation returns.*/
+    public interface IXboxRawConsole extends IXboxConsole {
+        <T> T Converse(Conversation<T> conversation);
+    }
+
+    /**A console that forwards to another one, such as a recording or a scheduler view.
+     * JRPC.SessionOf gives it the session of the innermost console, so all wrappers of one connection share it.*/
+    public interface IXboxConsoleDecorator extends IXboxConsole {
+        IXboxConsole getDelegate();
+    }
+
     public static class XboxManager {
         public String DefaultConsole = "127.0.0.1";
+        /**Name of the XboxTransport OpenConsole uses; see XboxTransport for the choices.*/
+        public String Transport = "xbdm";
 
         public String getDefaultConsole() {
             return DefaultConsole;
         }
 
+        /**Accepts an IP address, a host name, or a debug name or console ID known to ConsoleRegistry.shared().
+         * Debug names not yet in the registry are looked up with a broadcast through ConsoleDiscovery.shared()
+         * before falling back to DNS.*/
         public IXboxConsole OpenConsole(String nameOrIp) {
-            String host = (nameOrIp == null || nameOrIp.isBlank()) ? "127.0.0.1" : nameOrIp;
-            return new XbdmXboxConsole(host, 730);
+            String host = (nameOrIp == null || nameOrIp.isBlank()) ? "127.0.0.1" : nameOrIp.trim();
+            XboxTransport t = XboxTransport.forName(Transport);
+            return t.open(t.isNetwork() ? Resolve(host) : host, 730);
+        }
+
+        public String Resolve(String nameOrIp) {
+            ConsoleRegistry.Entry e = ConsoleRegistry.shared().find(nameOrIp);
+            if (e != null) return e.address();
+            //addresses and qualified host names go straight to the socket
+            if (nameOrIp.contains(".") || nameOrIp.contains(":") || nameOrIp.equalsIgnoreCase("localhost")) return nameOrIp;
+            try {
+                e = ConsoleDiscovery.shared().resolve(nameOrIp, 500);
+            } catch (IOException ignored) {}
+            return e != null ? e.address() : nameOrIp;
         }
     }
 
-    public static final class XbdmXboxConsole implements IXboxConsole {
+    public static final class XbdmXboxConsole implements IXboxRawConsole {
+        //read-only commands that are safe to resend on a fresh connection after an I/O error
+        private static final Set<String> IDEMPOTENT = Set.of(
+                "getmem", "dmversion", "dbgname", "systeminfo", "getconsoleid", "boxid", "xuid", "consoletype",
+                "modules", "modsections", "walkmem", "isstopped", "threads", "drivelist", "drivefreespace",
+                "dirlist", "getfileattributes");
+        private static final String KEEPALIVE_COMMAND = "dmversion";
+        private static final ScheduledExecutorService maintenance = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "XbdmXboxConsole-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+
         private final String host;
         private final int port;
         private Socket sock;
         private BufferedInputStream bin;
         private BufferedOutputStream bout;
+        private Link spare;
+        private boolean prewarming;
+        private ScheduledFuture<?> keepAlive;
+        private int keepAliveIdle;
+        private boolean retryIdempotent = true;
+        private long lastActivity;
         private int connectTimeout = 5000;
         private int conversationTimeout = 2000;
         private long connectionId = 1L;
+        private volatile long connectionGeneration;
+        private long sent;
+        private long received;
         private final XbdmDebugTarget debugTarget = new XbdmDebugTarget();
 
         public XbdmXboxConsole(String host, int port) {
@@ -109,12 +176,12 @@ public final class JRPC {
         }
 
         @Override
-        public void setConnectTimeout(int ms){
+        public synchronized void setConnectTimeout(int ms){
             this.connectTimeout = ms;
         }
 
         @Override
-        public void setConversationTimeout(int ms) {
+        public synchronized void setConversationTimeout(int ms) {
             this.conversationTimeout = ms;
             if (sock != null) {
                 try { sock.setSoTimeout(ms);
@@ -138,70 +205,329 @@ public final class JRPC {
         }
 
         @Override
-        public long OpenConnection(String flagsOrNull) {
+        public synchronized long OpenConnection(String flagsOrNull) {
             ensureConnected();
             return connectionId;
         }
 
+        /**Probes the connection with a cheap command after idleMs without traffic, and keeps a replacement
+         * connection dialled while the console is unreachable. 0 turns it off; while on, the console stays
+         * referenced by the shared maintenance thread until setKeepAlive(0) or Disconnect().*/
+        public synchronized void setKeepAlive(int idleMs) {
+            if (keepAlive != null) keepAlive.cancel(false);
+            keepAlive = null;
+            keepAliveIdle = idleMs;
+            if (idleMs <= 0) return;
+            long period = Math.max(250, idleMs / 2);
+            keepAlive = maintenance.scheduleWithFixedDelay(this::keepAliveTick, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        /**When on (the default), getmem and read-only commands that fail with an I/O error, timeouts included, are sent
+         * once more on a fresh connection. Both attempts share one deadline of the conversation timeout, so the retry
+         * only happens when the first attempt failed early enough to leave time for it.*/
+        public synchronized void setRetryIdempotent(boolean retry) {
+            this.retryIdempotent = retry;
+        }
+
+        /**Counts the connections made so far. A change means the console may have rebooted since a value was cached.*/
+        public long getConnectionGeneration() {
+            return connectionGeneration;
+        }
+
+        public synchronized void Disconnect() {
+            setKeepAlive(0);
+            closeQuietly();
+            if (spare != null) spare.close();
+            spare = null;
+            ConsoleSession session = sessions.get(this);
+            if (session != null) session.reset();
+        }
+
         @Override
-        public void SendTextCommand(long connectionId, String command, String[] outResponse) {
+        public synchronized void SendTextCommand(long connectionId, String command, String[] outResponse) {
             ensureConnected();
             if (connectionId != this.connectionId)
                 throw new ComException(UIntToInt(0x82DA0007L), "Bad connection id");
+            ConsoleEvents.Command ev = new ConsoleEvents.Command();
+            ev.begin();
+            long sent = this.sent, received = this.received;
+            boolean failed = true;
             try {
-                writeLine(command);
-                String first = readAsciiLine();
-                String lower = first.toLowerCase(Locale.ROOT);
-                if (lower.contains("response follows")) {
-                    StringBuilder sb = new StringBuilder(first);
-                    while (true) {
-                        String line = readAsciiLine();
-                        if (line.equals(".")) break;
-                        sb.append("\n").append(line);
+                outResponse[0] = retrying(IDEMPOTENT.contains(ConsoleEvents.verbOf(command)), () -> exchange(command));
+                failed = false;
+            } catch (IOException e) {
+                closeQuietly();
+                throw new ComException(UIntToInt(0x82DA0007L), "I/O: " + e.getMessage());
+            } finally {
+                if (ev.shouldCommit()) {
+                    ev.host = host;
+                    ev.verb = ConsoleEvents.verbOf(command);
+                    ev.bytesSent = this.sent - sent;
+                    ev.bytesReceived = this.received - received;
+                    ev.failed = failed;
+                    ev.commit();
+                }
+            }
+        }
+
+        @Override
+        public synchronized <T> T Converse(Conversation<T> conversation) {
+            ensureConnected();
+            ConsoleEvents.Command ev = new ConsoleEvents.Command();
+            ev.begin();
+            long sent = this.sent, received = this.received;
+            String[] verb = {""};
+            boolean failed = true;
+            try {
+                T result = conversation.run(new IXboxRawConnection() {
+                    @Override
+                    public void writeLine(String line) throws IOException {
+                        if (verb[0].isEmpty()) verb[0] = ConsoleEvents.verbOf(line);
+                        XbdmXboxConsole.this.writeLine(line);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        bout.write(b, off, len);
+                        XbdmXboxConsole.this.sent += len;
+                        lastActivity = System.nanoTime();
                     }
-                    outResponse[0] = sb.toString();
-                    return;
+
+                    @Override
+                    public void flush() throws IOException {
+                        bout.flush();
+                    }
+
+                    @Override
+                    public String readLine() throws IOException {
+                        return readAsciiLine();
+                    }
+
+                    @Override
+                    public void readFully(byte[] b, int off, int len) throws IOException {
+                        XbdmXboxConsole.this.readFully(b, off, len);
+                    }
+                });
+                failed = false;
+                return result;
+            } catch (IOException e) {
+                closeQuietly();
+                prewarm();
+                throw new ComException(UIntToInt(0x82DA0007L), "I/O: " + e.getMessage());
+            } catch (RuntimeException | Error e) {
+                //the conversation may have stopped partway through a reply, leaving the stream out of step
+                closeQuietly();
+                prewarm();
+                throw e;
+            } finally {
+                if (ev.shouldCommit()) {
+                    ev.host = host;
+                    ev.verb = verb[0];
+                    ev.bytesSent = this.sent - sent;
+                    ev.bytesReceived = this.received - received;
+                    ev.failed = failed;
+                    ev.commit();
                 }
-                if (lower.contains("binary")) {
-                    String lenLine = readAsciiLine().trim();
-                    int n = Integer.parseInt(lenLine);
-                    byte[] data = readN(n);
-                    try { readAsciiLine(); } catch (IOException ignored) {}
-                    outResponse[0] = "200- data=" + toHex(data);
-                    return;
+            }
+        }
+
+        private String exchange(String command) throws IOException {
+            writeLine(command);
+            String first = readAsciiLine();
+            String lower = first.toLowerCase(Locale.ROOT);
+            if (lower.contains("response follows")) {
+                StringBuilder sb = new StringBuilder(first);
+                while (true) {
+                    String line = readAsciiLine();
+                    if (line.equals(".")) break;
+                    sb.append("\n").append(line);
                 }
-                outResponse[0] = first;
+                return sb.toString();
+            }
+            if (lower.contains("binary")) {
+                String lenLine = readAsciiLine().trim();
+                int n = Integer.parseInt(lenLine);
+                byte[] data = readN(n);
+                try { readAsciiLine(); } catch (IOException ignored) {}
+                return "200- data=" + Hex.encode(data);
+            }
+            return first;
+        }
+
+        private interface IoCall<T> {
+            T call() throws IOException;
+        }
+
+        //both attempts share the caller's deadline of one conversation timeout: the retry reconnects within what is
+        //left of it and reads with the remainder as its timeout, and a first attempt that timed out leaves nothing,
+        //so it fails straight away rather than stalling the caller for a second round
+        private <T> T retrying(boolean idempotent, IoCall<T> call) throws IOException {
+            long deadline = System.nanoTime() + conversationTimeout * 1_000_000L;
+            try {
+                return call.call();
             } catch (IOException e) {
                 closeQuietly();
-                throw new ComException(UIntToInt(0x82DA0007L), "I/O: " + e.getMessage());
+                int left = remainingMillis(deadline);
+                if (!idempotent || !retryIdempotent || left <= 0) {
+                    prewarm();
+                    throw e;
+                }
+                try {
+                    connect(Math.min(connectTimeout, left), left);
+                    left = remainingMillis(deadline);
+                    if (left <= 0) throw new SocketTimeoutException("No time left to retry");
+                    sock.setSoTimeout(left);
+                } catch (IOException ce) {
+                    closeQuietly();
+                    prewarm();
+                    e.addSuppressed(ce);
+                    throw e;
+                }
+                try {
+                    return call.call();
+                } catch (IOException e2) {
+                    closeQuietly();
+                    prewarm();
+                    throw e2;
+                } finally {
+                    if (sock != null) {
+                        try { sock.setSoTimeout(conversationTimeout);
+                        } catch (IOException ignored) {}
+                    }
+                }
             }
         }
 
+        private static int remainingMillis(long deadline) {
+            return (int) Math.max(0, (deadline - System.nanoTime()) / 1_000_000L);
+        }
+
         private void ensureConnected() {
             if (sock != null && sock.isConnected() && !sock.isClosed()) return;
             try {
-                sock = new Socket();
-                sock.connect(new InetSocketAddress(host, port), connectTimeout);
-                sock.setSoTimeout(conversationTimeout);
-                bin = new BufferedInputStream(sock.getInputStream());
-                bout = new BufferedOutputStream(sock.getOutputStream());
-                try { readAsciiLine(); } catch (IOException ignored) {}
+                connect(connectTimeout, conversationTimeout);
             } catch (IOException e) {
                 closeQuietly();
+                prewarm();
                 throw new ComException(UIntToInt(0x82DA0100L), "Connect failed: " + e.getMessage());
             }
         }
 
+        private void connect(int timeoutMs, int soTimeout) throws IOException {
+            Link l = spare;
+            spare = null;
+            if (l != null && !l.alive()) {
+                l.close();
+                l = null;
+            }
+            if (l == null) l = Link.dial(host, port, timeoutMs, soTimeout);
+            sock = l.sock;
+            bin = l.in;
+            bout = l.out;
+            sock.setSoTimeout(conversationTimeout);
+            lastActivity = System.nanoTime();
+            connectionGeneration++;
+        }
+
+        //dials a replacement connection in the background so the next call does not pay connect plus greeting
+        private void prewarm() {
+            if (spare != null || prewarming) return;
+            prewarming = true;
+            int timeout = connectTimeout, soTimeout = conversationTimeout;
+            maintenance.execute(() -> {
+                Link l = null;
+                try {
+                    l = Link.dial(host, port, timeout, soTimeout);
+                } catch (IOException ignored) {}
+                synchronized (this) {
+                    prewarming = false;
+                    if (l != null && spare == null) spare = l;
+                    else if (l != null) l.close();
+                }
+            });
+        }
+
+        private synchronized void keepAliveTick() {
+            if (sock == null) {
+                prewarm();
+                return;
+            }
+            if (System.nanoTime() - lastActivity < keepAliveIdle * 1_000_000L) return;
+            try {
+                exchange(KEEPALIVE_COMMAND);
+            } catch (IOException | RuntimeException e) {
+                closeQuietly();
+                prewarm();
+            }
+        }
+
+        private static final class Link {
+            final Socket sock;
+            final BufferedInputStream in;
+            final BufferedOutputStream out;
+
+            private Link(Socket sock) throws IOException {
+                this.sock = sock;
+                this.in = new BufferedInputStream(sock.getInputStream());
+                this.out = new BufferedOutputStream(sock.getOutputStream());
+            }
+
+            //connects and consumes the "201- connected" greeting
+            static Link dial(String host, int port, int connectTimeout, int soTimeout) throws IOException {
+                Socket s = new Socket();
+                try {
+                    s.connect(new InetSocketAddress(host, port), connectTimeout);
+                    s.setSoTimeout(soTimeout);
+                    Link l = new Link(s);
+                    int b;
+                    while ((b = l.in.read()) != -1 && b != '\n') {}
+                    if (b == -1) throw new EOFException("XBDM closed connection");
+                    return l;
+                } catch (IOException e) {
+                    try { s.close(); } catch (IOException ignored) {}
+                    throw e;
+                }
+            }
+
+            //a spare may have sat idle long enough for the console to drop it, or for it to reboot;
+            //an idle connection has nothing to read, so a read that times out at once means it is still open
+            boolean alive() {
+                if (sock.isClosed() || sock.isInputShutdown()) return false;
+                try {
+                    int timeout = sock.getSoTimeout();
+                    sock.setSoTimeout(1);
+                    try {
+                        //EOF or stray bytes both rule the connection out
+                        in.read();
+                        return false;
+                    } catch (SocketTimeoutException e) {
+                        return true;
+                    } finally {
+                        sock.setSoTimeout(timeout);
+                    }
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+
+            void close() {
+                try { sock.close(); } catch (IOException ignored) {}
+            }
+        }
+
         private void writeLine(String s) throws IOException {
             if (!s.endsWith("\r\n")) s = s + "\r\n";
             bout.write(s.getBytes(StandardCharsets.US_ASCII));
             bout.flush();
+            sent += s.length();
+            lastActivity = System.nanoTime();
         }
 
         private String readAsciiLine() throws IOException {
             ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
             int b;
             while ((b = bin.read()) != -1) {
+                received++;
                 if (b == '\n') break;
                 if (b != '\r') baos.write(b);
             }
@@ -211,19 +537,18 @@ public final class JRPC {
 
         private byte[] readN(int n) throws IOException {
             byte[] buf = new byte[n];
-            int off = 0;
-            while (off < n) {
-                int r = bin.read(buf, off, n - off);
-                if (r < 0) throw new EOFException("Unexpected EOF reading binary");
-                off += r;
-            }
+            readFully(buf, 0, n);
             return buf;
         }
 
-        private static String toHex(byte[] b) {
-            StringBuilder sb = new StringBuilder(b.length * 2);
-            for (byte value : b) sb.append(String.format("%02X", value));
-            return sb.toString();
+        private void readFully(byte[] buf, int off, int n) throws IOException {
+            int end = off + n;
+            while (off < end) {
+                int r = bin.read(buf, off, end - off);
+                if (r < 0) throw new EOFException("Unexpected EOF reading binary");
+                off += r;
+                received += r;
+            }
         }
 
         private void closeQuietly() {
@@ -236,32 +561,22 @@ public final class JRPC {
         private final class XbdmDebugTarget implements IXboxDebugTarget {
             @Override
             public void GetMemory(long address, long length, byte[] outBuf, long[] outRead) {
-                ensureConnected();
-                try {
-                    writeLine("getmem addr=0x" + Long.toHexString(address).toUpperCase(Locale.ROOT) + " length=" + length);
-                    String first = readAsciiLine();
-                    String lower = first.toLowerCase(Locale.ROOT);
+                synchronized (XbdmXboxConsole.this) {
+                    ensureConnected();
+                    ConsoleEvents.Memory ev = new ConsoleEvents.Memory();
+                    ev.begin();
                     int copied = 0;
-                    if (lower.contains("binary")) {
-                        String lenLine = readAsciiLine().trim();
-                        int n = Integer.parseInt(lenLine);
-                        byte[] data = readN(n);
-                        copied = Math.min(outBuf.length, Math.min((int) length, data.length));
-                        System.arraycopy(data, 0, outBuf, 0, copied);
-                        try { readAsciiLine(); } catch (IOException ignored) {}
-                    } else {
-                        String hex = extractField(first, "data=");
-                        int n = Math.min(outBuf.length, Math.min((int) length, hex.length() / 2));
-                        for (int i = 0; i < n; i++) {
-                            int hi = Character.digit(hex.charAt(i * 2), 16);
-                            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
-                            outBuf[i] = (byte) ((hi << 4) | lo);
-                        }
-                        copied = n;
+                    boolean failed = true;
+                    try {
+                        copied = retrying(true, () -> readMemory(address, length, outBuf));
+                        if (outRead != null && outRead.length > 0) outRead[0] = copied;
+                        failed = false;
+                    } catch (IOException e) {
+                        closeQuietly();
+                        throw new ComException(UIntToInt(0x82DA0007L), "getmem failed: " + e.getMessage());
+                    } finally {
+                        commit(ev, "getmem", address, length, copied, failed);
                     }
-                    if (outRead != null && outRead.length > 0) outRead[0] = copied;
-                } catch (IOException e) {
-                    throw new ComException(UIntToInt(0x82DA0007L), "getmem failed: " + e.getMessage());
                 }
             }
 
@@ -271,24 +586,55 @@ public final class JRPC {
 
             @Override
             public void SetMemory(long address, long length, byte[] data, long[] outWritten) {
-                ensureConnected();
-                try {
+                synchronized (XbdmXboxConsole.this) {
+                    ensureConnected();
+                    ConsoleEvents.Memory ev = new ConsoleEvents.Memory();
+                    ev.begin();
                     int n = (int) Math.min(length, data.length);
-                    StringBuilder hex = new StringBuilder(n * 2);
-                    for (int i = 0; i < n; i++) hex.append(String.format("%02X", data[i]));
-                    writeLine("setmem addr=0x" + Long.toHexString(address).toUpperCase(Locale.ROOT) + " data=" + hex);
+                    boolean failed = true;
+                    try {
+                        writeLine("setmem addr=0x" + Long.toHexString(address).toUpperCase(Locale.ROOT) + " data=" + Hex.encode(data, 0, n));
+                        try { readAsciiLine(); } catch (IOException ignored) {}
+                        if (outWritten != null && outWritten.length > 0) outWritten[0] = n;
+                        failed = false;
+                    } catch (IOException e) {
+                        closeQuietly();
+                        prewarm();
+                        throw new ComException(UIntToInt(0x82DA0007L), "setmem failed: " + e.getMessage());
+                    } finally {
+                        commit(ev, "setmem", address, length, n, failed);
+                    }
+                }
+            }
+
+            private int readMemory(long address, long length, byte[] outBuf) throws IOException {
+                writeLine("getmem addr=0x" + Long.toHexString(address).toUpperCase(Locale.ROOT) + " length=" + length);
+                String first = readAsciiLine();
+                String lower = first.toLowerCase(Locale.ROOT);
+                if (lower.contains("binary")) {
+                    String lenLine = readAsciiLine().trim();
+                    int n = Integer.parseInt(lenLine);
+                    byte[] data = readN(n);
+                    int copied = Math.min(outBuf.length, Math.min((int) length, data.length));
+                    System.arraycopy(data, 0, outBuf, 0, copied);
                     try { readAsciiLine(); } catch (IOException ignored) {}
-                    if (outWritten != null && outWritten.length > 0) outWritten[0] = n;
-                } catch (IOException e) {
-                    throw new ComException(UIntToInt(0x82DA0007L), "setmem failed: " + e.getMessage());
+                    return copied;
+                } else {
+                    int at = first.indexOf("data=");
+                    if (at < 0) return 0;
+                    return Hex.decode(first, at + 5, outBuf, 0, Math.min(outBuf.length, (int) length));
                 }
             }
 
-            private String extractField(String resp, String key) {
-                int i = resp.indexOf(key);
-                if (i < 0) return "";
-                int e = resp.indexOf(' ', i + key.length());
-                return resp.substring(i + key.length(), e < 0 ? resp.length() : e).trim();
+            private void commit(ConsoleEvents.Memory ev, String op, long address, long length, long bytes, boolean failed) {
+                if (!ev.shouldCommit()) return;
+                ev.host = host;
+                ev.operation = op;
+                ev.address = address;
+                ev.length = length;
+                ev.bytes = bytes;
+                ev.failed = failed;
+                ev.commit();
             }
         }
     }
@@ -352,18 +698,16 @@ public final class JRPC {
     private static final long RET_BYTE_ARRAY = 7;
     private static final long RET_UINT64 = 8;
     private static final long RET_UINT64_ARRAY = 9;
-    private static long connectionId = 0;
-    private static boolean connectionIdInitialized = false;
+    private static final Map<IXboxConsole, ConsoleSession> sessions = Collections.synchronizedMap(new WeakHashMap<>());
     public static final long JRPCVersion = 2;
+    /**Error code of XBDM's "memory not mapped" status. The socket consoles report unmapped memory as a short read;
+     * a debug target that throws instead uses this code, and readers that skip unmapped memory skip only this one.*/
+    public static final int XBDM_MEMUNMAPPED = 0x82DA0004;
 
     public static String ToHexString(String s) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < s.length(); i++) {
-            int b = (byte) s.charAt(i);
-            if (b < 0) b += 256;
-            sb.append(String.format("%02X", b));
-        }
-        return sb.toString();
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) s.charAt(i);
+        return Hex.encode(b);
     }
 
     public static byte[] Push(byte[] inArray, byte value) {
@@ -412,8 +756,7 @@ public final class JRPC {
         boolean connected = false;
         while (!connected) {
             try {
-                connectionId = con.OpenConnection(null);
-                connectionIdInitialized = true;
+                SessionOf(con).open(con);
                 connected = true;
             } catch (ComException ex) {
                 if (ex.getErrorCode() == UIntToInt(0x82DA0100L)) {
@@ -480,13 +823,44 @@ public final class JRPC {
     }
 
     public static byte[] GetMemory(IXboxConsole console, long Address, long Length) {
-        long[] Out = new long[] {0};
         byte[] ret = new byte[(int) Length];
-        console.DebugTarget().GetMemory(Address, Length, ret, Out);
+        ReadMemory(console, Address, ret, 0, ret.length);
         console.DebugTarget().InvalidateMemoryCache(true, Address, Length);
         return ret;
     }
 
+    /**Reads length bytes at address into dst at off. Reads longer than ChunkTuner.MIN_CHUNK are split into getmem
+     * requests sized by the session's ChunkTuner, if it has one.
+     * @return bytes read; fewer than length when the console stopped short, e.g. at unmapped memory*/
+    public static int ReadMemory(IXboxConsole console, long address, byte[] dst, int off, int length) {
+        long[] read = {0};
+        ChunkTuner tuner = SessionOf(console).chunkTuner();
+        if (tuner == null || length <= ChunkTuner.MIN_CHUNK) {
+            byte[] buf = off == 0 ? dst : new byte[length];
+            console.DebugTarget().GetMemory(address, length, buf, read);
+            int n = (int) Math.min(read[0], length);
+            if (buf != dst) System.arraycopy(buf, 0, dst, off, n);
+            return n;
+        }
+        byte[] chunk = null;
+        int done = 0;
+        while (done < length) {
+            int size = tuner.next();
+            int n = Math.min(size, length - done);
+            //the first chunk can land in place; the debug target always writes from index 0
+            byte[] buf = off + done == 0 ? dst : (chunk != null && chunk.length >= n ? chunk : (chunk = new byte[Math.min(tuner.getMaxChunk(), length)]));
+            read[0] = 0;
+            long start = System.nanoTime();
+            console.DebugTarget().GetMemory(address + done, n, buf, read);
+            int got = (int) Math.min(read[0], n);
+            if (got == size) tuner.record(size, System.nanoTime() - start);
+            if (buf != dst) System.arraycopy(buf, 0, dst, off + done, got);
+            done += got;
+            if (got < n) break;
+        }
+        return done;
+    }
+
     public static byte ReadSByte(IXboxConsole c, long a) {
         return (byte)(GetMemory(c,a,1)[0]);
     }
@@ -1110,23 +1484,38 @@ public final class JRPC {
         return (String)CallArgs(c,t==ThreadType.System,RET_STRING,String.class,m,o,0,0,true,args);
     }
 
+    public static ConsoleSession SessionOf(IXboxConsole c) {
+        while (c instanceof IXboxConsoleDecorator d) c = d.getDelegate();
+        return sessions.computeIfAbsent(c, k -> {
+            ConsoleSession s = new ConsoleSession();
+            //chunking pays off only over a socket; the check is on the innermost console, so recordings and
+            //scheduler views of a socket console chunk too
+            if (k instanceof XbdmXboxConsole || k instanceof com.jjrpc.xdevkit.XbdmXboxConsole) s.setChunkTuner(new ChunkTuner());
+            return s;
+        });
+    }
+
     private static String SendCommand(IXboxConsole c, String cmd){
-        if (!connectionIdInitialized) throw new RuntimeException("IXboxConsole argument did not connect using JRPC's connect function.");
         String[] out = new String[1];
         try {
-            c.SendTextCommand(connectionId, cmd, out);
+            c.SendTextCommand(SessionOf(c).connectionId(c), cmd, out);
             String r = out[0]==null ? "" : out[0];
             if (r.contains("error=")) throw new RuntimeException(r.substring(11));
             if (r.contains("DEBUG")) throw new RuntimeException("JRPC is not installed on the current console");
             return r;
         } catch (ComException ex) {
-            if (ex.getErrorCode() == UIntToInt(0x82DA0007L)) throw new RuntimeException("JRPC is not installed on the current console");
+            if (ex.getErrorCode() == UIntToInt(0x82DA0007L)) throw new RuntimeException("JRPC is not installed on the current console", ex);
             else throw ex;
         }
     }
 
     private static Object CallArgs(
             IXboxConsole c, boolean systemThread, long type, Class<?> t, String module, int ordinal, long addr, long arraySize, boolean vm, Object... args) {
+        return SessionOf(c).exclusive(() -> CallArgsLocked(c, systemThread, type, t, module, ordinal, addr, arraySize, vm, args));
+    }
+
+    private static Object CallArgsLocked(
+            IXboxConsole c, boolean systemThread, long type, Class<?> t, String module, int ordinal, long addr, long arraySize, boolean vm, Object... args) {
         if (!IsValidReturnType(t)) throw new RuntimeException(
                 "Invalid type "+t.getName()+System.lineSeparator()
                 +"JRPC only supports: bool, byte, short, int, long, ushort, uint, ulong, float, double");
@@ -1153,7 +1542,7 @@ public final class JRPC {
                     if (obj instanceof int[]) {
                         byte[] arr = IntArrayToByte((int[])obj);
                         sb.append(RET_BYTE_ARRAY).append("/").append(arr.length).append("\\");
-                        for (byte b : arr) sb.append(String.format("%02X", b));
+                        Hex.append(sb, arr);
                         sb.append("\\");
                         nArgs++;
                     } else {
@@ -1164,7 +1553,7 @@ public final class JRPC {
                              i++) asInt[i] = (int) (u[i] & 0xFFFFFFFFL);
                         byte[] arr = IntArrayToByte(asInt);
                         sb.append(RET_BYTE_ARRAY).append("/").append(arr.length).append("\\");
-                        for (byte b : arr) sb.append(String.format("%02X", b));
+                        Hex.append(sb, arr);
                         sb.append("\\");
                         nArgs++;
                     }
@@ -1200,9 +1589,7 @@ public final class JRPC {
                     for (float v : fa) {
                         byte[] bytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(v).array();
                         ReverseBytes(bytes,4);
-                        for (int q=0;
-                             q<4;
-                             q++) sb.append(String.format("%02X", bytes[q]));
+                        Hex.append(sb, bytes, 0, 4);
                     }
                     sb.append("\\");
                     nArgs++;
@@ -1234,17 +1621,46 @@ public final class JRPC {
 
         if (nArgs > 37) throw new RuntimeException("Cannot use more than 37 parameters in a call");
 
-        String resp = SendCommand(c, startCmd);
-        String findStr = "buf_addr=";
-        while (resp.contains(findStr)) {
-            try {
-                Thread.sleep(250);
+        ConsoleEvents.Call ev = new ConsoleEvents.Call();
+        ev.begin();
+        long sent = startCmd.length(), received = 0;
+        int polls = 0;
+        boolean failed = true;
+        String resp;
+        try {
+            resp = SendCommand(c, startCmd);
+            received += resp.length();
+            String findStr = "buf_addr=";
+            while (resp.contains(findStr)) {
+                try {
+                    Thread.sleep(250);
+                }
+                catch (InterruptedException ignored) {}
+                int idx = find(resp, findStr);
+                String sub = resp.substring(idx + findStr.length());
+                long address = Long.parseLong(sub, 16);
+                String poll = "consolefeatures " + findStr + "0x" + Long.toHexString(address).toUpperCase();
+                resp = SendCommand(c, poll);
+                sent += poll.length();
+                received += resp.length();
+                polls++;
+            }
+            failed = false;
+        } finally {
+            if (ev.shouldCommit()) {
+                ev.module = module;
+                ev.ordinal = ordinal;
+                ev.address = addr;
+                ev.returnType = type;
+                ev.arguments = nArgs;
+                ev.vm = vm;
+                ev.systemThread = systemThread;
+                ev.bytesSent = sent;
+                ev.bytesReceived = received;
+                ev.polls = polls;
+                ev.failed = failed;
+                ev.commit();
             }
-            catch (InterruptedException ignored) {}
-            int idx = find(resp, findStr);
-            String sub = resp.substring(idx + findStr.length());
-            long address = Long.parseLong(sub, 16);
-            resp = SendCommand(c, "consolefeatures " + findStr + "0x" + Long.toHexString(address).toUpperCase());
         }
         c.setConversationTimeout(2000);
         c.setConnectTimeout(5000);
@@ -1360,7 +1776,7 @@ public final class JRPC {
 
     public static String ExecRaw(IXboxConsole c, String cmd) {
         String[] out = new String[1];
-        c.SendTextCommand(connectionId, cmd, out);
+        c.SendTextCommand(SessionOf(c).connectionId(c), cmd, out);
         return out[0] == null ? "" : out[0];
     }
 }
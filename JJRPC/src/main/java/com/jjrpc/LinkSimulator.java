@@ -0,0 +1,200 @@
+package com.jjrpc;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**Local TCP proxy in front of an XBDM port that adds latency, jitter, a bandwidth cap, segmented reads
+ * and random mid-response disconnects. Point a console at 127.0.0.1:getLocalPort(), or use openConsole().*/
+public final class LinkSimulator implements Closeable {
+
+    /**@param rttMillis round trip time, split evenly between both directions
+     * @param jitterMillis extra random delay per segment, 0..jitterMillis
+     * @param bytesPerSecond bandwidth cap per direction, 0 for unlimited
+     * @param maxSegment largest chunk forwarded at once; every read is cut to a random size up to this
+     * @param disconnectChance probability per console-to-client segment that the link drops halfway through it*/
+    public record Profile(int rttMillis, int jitterMillis, long bytesPerSecond, int maxSegment, double disconnectChance) {
+        public static final Profile LAN = new Profile(1, 0, 11_000_000L, 1460, 0);
+        public static final Profile WIFI = new Profile(8, 12, 2_500_000L, 536, 0);
+        public static final Profile VPN = new Profile(60, 20, 900_000L, 1360, 0);
+        public static final Profile UNRELIABLE_WIFI = new Profile(15, 40, 1_000_000L, 536, 0.002);
+
+        public Profile withDisconnectChance(double chance) {
+            return new Profile(rttMillis, jitterMillis, bytesPerSecond, maxSegment, chance);
+        }
+    }
+
+    private final String targetHost;
+    private final int targetPort;
+    private final ServerSocket server;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private volatile Profile profile;
+    private volatile boolean closed;
+
+    public LinkSimulator(String targetHost, int targetPort, Profile profile) throws IOException {
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.profile = profile;
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        daemon(this::acceptLoop, "LinkSimulator-accept-" + server.getLocalPort());
+    }
+
+    public int getLocalPort() {
+        return server.getLocalPort();
+    }
+
+    public JRPC.IXboxConsole openConsole() {
+        return new JRPC.XbdmXboxConsole("127.0.0.1", getLocalPort());
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    /**Drops every proxied connection, as a console reboot or access point roam would.*/
+    public void disconnectAll() {
+        for (Socket s : open) closeQuietly(s);
+        open.clear();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try { server.close(); } catch (IOException ignored) {}
+        disconnectAll();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket client;
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Socket upstream = new Socket();
+            try {
+                upstream.connect(new InetSocketAddress(targetHost, targetPort), 5000);
+                upstream.setTcpNoDelay(true);
+                client.setTcpNoDelay(true);
+            } catch (IOException e) {
+                closeQuietly(client);
+                closeQuietly(upstream);
+                continue;
+            }
+            open.add(client);
+            open.add(upstream);
+            new Direction(client, upstream, false).start();
+            new Direction(upstream, client, true).start();
+        }
+    }
+
+    private static final class Segment {
+        final byte[] data;
+        final long deliverAt;
+
+        Segment(byte[] data, long deliverAt) {
+            this.data = data;
+            this.deliverAt = deliverAt;
+        }
+    }
+
+    private static final Segment EOF = new Segment(new byte[0], 0);
+
+    //one direction of a proxied connection: a reader that timestamps segments and a writer that releases them on time
+    private final class Direction {
+        private final Socket from;
+        private final Socket to;
+        private final boolean fromConsole;
+        private final LinkedBlockingQueue<Segment> queue = new LinkedBlockingQueue<>();
+        private long wireFree;
+        private long lastDeliver;
+
+        Direction(Socket from, Socket to, boolean fromConsole) {
+            this.from = from;
+            this.to = to;
+            this.fromConsole = fromConsole;
+        }
+
+        void start() {
+            String name = "LinkSimulator-" + (fromConsole ? "down-" : "up-") + from.getPort();
+            daemon(this::readLoop, name + "-read");
+            daemon(this::writeLoop, name + "-write");
+        }
+
+        private void readLoop() {
+            byte[] buf = new byte[65536];
+            try {
+                InputStream in = from.getInputStream();
+                while (true) {
+                    Profile p = profile;
+                    int max = Math.max(1, Math.min(buf.length, p.maxSegment()));
+                    int want = max == 1 ? 1 : 1 + ThreadLocalRandom.current().nextInt(max);
+                    int n = in.read(buf, 0, want);
+                    if (n < 0) break;
+                    queue.add(new Segment(Arrays.copyOf(buf, n), schedule(p, n)));
+                }
+            } catch (IOException ignored) {
+            } finally {
+                queue.add(EOF);
+            }
+        }
+
+        private long schedule(Profile p, int n) {
+            long now = System.nanoTime();
+            long serialize = p.bytesPerSecond() > 0 ? n * 1_000_000_000L / p.bytesPerSecond() : 0;
+            wireFree = Math.max(wireFree, now) + serialize;
+            long oneWay = p.rttMillis() * 500_000L;
+            long jitter = p.jitterMillis() > 0 ? ThreadLocalRandom.current().nextLong(p.jitterMillis() * 1_000_000L + 1) : 0;
+            lastDeliver = Math.max(lastDeliver, wireFree + oneWay + jitter);
+            return lastDeliver;
+        }
+
+        private void writeLoop() {
+            try {
+                OutputStream out = to.getOutputStream();
+                while (true) {
+                    Segment s = queue.take();
+                    if (s == EOF) break;
+                    long wait = s.deliverAt - System.nanoTime();
+                    if (wait > 0) Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+                    double chance = profile.disconnectChance();
+                    if (fromConsole && chance > 0 && ThreadLocalRandom.current().nextDouble() < chance) {
+                        out.write(s.data, 0, s.data.length / 2);
+                        out.flush();
+                        break;
+                    }
+                    out.write(s.data);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException ignored) {
+            } finally {
+                closeQuietly(from);
+                closeQuietly(to);
+                open.remove(from);
+                open.remove(to);
+            }
+        }
+    }
+
+    private static void daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static void closeQuietly(Socket s) {
+        try { s.close(); } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,445 @@
+package com.jjrpc;
+
+import com.jjrpc.xdevkit.XbdmResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**An XBDM console emulated in-process: commands are answered by method calls, with no socket or thread in between,
+ * so the cost of a call is the library's own. Memory is zero-filled and sparse; map() adds regions, which walkmem
+ * lists and getmem/setmem reach. Reads stop at the first unmapped byte, as they do on a console.
+ * Text commands covered: dmversion, dbgname, getconsoleid, boxid, xuid, consoletype, systeminfo, walkmem, modules,
+ * getmem, setmem, getfileattributes, stop, go, isstopped, magicboot and the JRPC consolefeatures queries for
+ * kernel version, title ID, temperature and console type. Through Converse it also answers getfile, sendfile and
+ * writefile against in-memory files (see putFile) and screenshot with a blank linear frame, so FileTransfer and
+ * ScreenCapture run against it.*/
+public final class LoopbackXboxConsole implements JRPC.IXboxRawConsole {
+
+    public static final long DEFAULT_BASE = 0x82000000L;
+    public static final long DEFAULT_SIZE = 0x01000000L;
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int SCREEN_WIDTH = 640;
+    private static final int SCREEN_HEIGHT = 360;
+
+    private final String name;
+    private final TreeMap<Long, Region> regions = new TreeMap<>();
+    //keyed by lower-cased path
+    private final Map<String, byte[]> files = new HashMap<>();
+    private final LoopbackDebugTarget debugTarget = new LoopbackDebugTarget();
+    private int connectTimeout = 5000;
+    private int conversationTimeout = 2000;
+    private long titleId = 0xFFFE07D1L;
+    private boolean stopped;
+    private long commands;
+
+    private static final class Region {
+        final long base;
+        final long size;
+        final int protect;
+        final byte[][] pages;
+
+        Region(long base, long size, int protect) {
+            this.base = base;
+            this.size = size;
+            this.protect = protect;
+            this.pages = new byte[(int) ((size + PAGE_SIZE - 1) >>> PAGE_SHIFT)][];
+        }
+    }
+
+    /**A console with DEFAULT_SIZE bytes of read-write memory at DEFAULT_BASE.*/
+    public LoopbackXboxConsole(String name) {
+        this.name = name == null || name.isBlank() ? "loopback" : name;
+        map(DEFAULT_BASE, DEFAULT_SIZE, 0x04);
+    }
+
+    /**Adds a zero-filled region; protect takes the PAGE_ constants of MemoryRegionMap.*/
+    public synchronized void map(long base, long size, int protect) {
+        Map.Entry<Long, Region> below = regions.floorEntry(base + size - 1);
+        if (below != null && below.getValue().base + below.getValue().size > base)
+            throw new IllegalArgumentException("Region overlaps 0x" + Long.toHexString(below.getKey()));
+        regions.put(base, new Region(base, size, protect));
+    }
+
+    public synchronized void setTitleId(long titleId) {
+        this.titleId = titleId;
+    }
+
+    /**Stores a file that getfile and getfileattributes will find, e.g. putFile("HDD:\\title\\save.bin", data).*/
+    public synchronized void putFile(String path, byte[] data) {
+        files.put(path.toLowerCase(Locale.ROOT), data.clone());
+    }
+
+    /**A file's contents, or null when there is none at path.*/
+    public synchronized byte[] getFile(String path) {
+        byte[] b = files.get(path.toLowerCase(Locale.ROOT));
+        return b == null ? null : b.clone();
+    }
+
+    /**Text commands and conversations handled so far; memory calls through the debug target are not counted.*/
+    public synchronized long getCommandCount() {
+        return commands;
+    }
+
+    @Override
+    public long getIPAddress() {
+        return 0x7F000001L;
+    }
+
+    @Override
+    public void setConnectTimeout(int ms) {
+        this.connectTimeout = ms;
+    }
+
+    @Override
+    public void setConversationTimeout(int ms) {
+        this.conversationTimeout = ms;
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    @Override
+    public int getConversationTimeout() {
+        return conversationTimeout;
+    }
+
+    @Override
+    public JRPC.IXboxDebugTarget getDebugTarget() {
+        return debugTarget;
+    }
+
+    @Override
+    public long OpenConnection(String flagsOrNull) {
+        return 1L;
+    }
+
+    @Override
+    public synchronized void SendTextCommand(long connectionId, String command, String[] outResponse) {
+        commands++;
+        List<String> reply = execute(command);
+        //same shape as the socket transports: status line, body lines joined by \n, no terminating "."
+        StringBuilder sb = new StringBuilder(reply.get(0));
+        for (int i = 1; i < reply.size(); i++) {
+            if (i == reply.size() - 1 && reply.get(i).equals(".")) break;
+            sb.append('\n').append(reply.get(i));
+        }
+        outResponse[0] = sb.toString();
+    }
+
+    @Override
+    public synchronized <T> T Converse(JRPC.Conversation<T> conversation) {
+        commands++;
+        LoopbackLink link = new LoopbackLink();
+        try {
+            return conversation.run(link);
+        } catch (IOException e) {
+            throw new JRPC.ComException(0x82DA0007, "I/O: " + e.getMessage());
+        }
+    }
+
+    //the console's end of a conversation: replies queue up as wire bytes, and an accepted sendfile or writefile
+    //takes the bytes written after it until its length is reached
+    private final class LoopbackLink implements JRPC.IXboxRawConnection {
+        private final ByteArrayOutputStream replies = new ByteArrayOutputStream();
+        private byte[] inbound = new byte[0];
+        private int readAt;
+        private String uploadPath;
+        private long uploadOffset;
+        private ByteArrayOutputStream upload;
+        private long uploadLeft;
+
+        @Override
+        public void writeLine(String line) throws IOException {
+            if (upload != null) throw new IOException("Command sent while " + uploadLeft + " bytes of an upload were outstanding");
+            String verb = ConsoleEvents.verbOf(line);
+            switch (verb) {
+                case "getfile" -> getfile(line);
+                case "sendfile", "writefile" -> beginUpload(verb, line);
+                case "screenshot" -> screenshot();
+                default -> {
+                    for (String l : execute(line)) reply(l);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (upload == null) throw new IOException("No upload in progress");
+            if (len > uploadLeft) throw new IOException("Upload longer than the " + uploadLeft + " bytes announced");
+            upload.write(b, off, len);
+            uploadLeft -= len;
+            if (uploadLeft > 0) return;
+            byte[] old = files.getOrDefault(uploadPath, new byte[0]);
+            byte[] data = upload.toByteArray();
+            byte[] merged = Arrays.copyOf(old, (int) Math.max(old.length, uploadOffset + data.length));
+            System.arraycopy(data, 0, merged, (int) uploadOffset, data.length);
+            files.put(uploadPath, merged);
+            upload = null;
+            reply("200- OK");
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public String readLine() throws IOException {
+            fill();
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (readAt >= inbound.length) {
+                    if (sb.length() == 0) throw new EOFException("No reply pending");
+                    break;
+                }
+                int b = inbound[readAt++] & 0xFF;
+                if (b == '\n') break;
+                if (b != '\r') sb.append((char) b);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public void readFully(byte[] b, int off, int len) throws IOException {
+            fill();
+            if (inbound.length - readAt < len) throw new EOFException("Only " + (inbound.length - readAt) + " of " + len + " bytes pending");
+            System.arraycopy(inbound, readAt, b, off, len);
+            readAt += len;
+        }
+
+        //moves replies queued since the last read behind the unread bytes
+        private void fill() {
+            if (replies.size() == 0) return;
+            byte[] more = replies.toByteArray();
+            replies.reset();
+            byte[] next = Arrays.copyOfRange(inbound, readAt, inbound.length + more.length);
+            System.arraycopy(more, 0, next, inbound.length - readAt, more.length);
+            inbound = next;
+            readAt = 0;
+        }
+
+        private void reply(String line) {
+            replies.writeBytes((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        //203, then the length as 4 little-endian bytes and the file from offset
+        private void getfile(String line) {
+            Map<String, String> f = XbdmResponse.fields(line);
+            byte[] file = files.get(f.getOrDefault("name", "").toLowerCase(Locale.ROOT));
+            if (file == null) {
+                reply("402- file not found");
+                return;
+            }
+            int from = (int) Math.min(file.length, XbdmResponse.number(f, "offset", 0));
+            int n = file.length - from;
+            reply("203- binary response follows");
+            replies.writeBytes(new byte[]{(byte) n, (byte) (n >>> 8), (byte) (n >>> 16), (byte) (n >>> 24)});
+            replies.write(file, from, n);
+        }
+
+        private void beginUpload(String verb, String line) {
+            Map<String, String> f = XbdmResponse.fields(line);
+            String path = f.getOrDefault("name", "").toLowerCase(Locale.ROOT);
+            long offset = XbdmResponse.number(f, "offset", 0);
+            long length = XbdmResponse.number(f, "length", -1);
+            if (path.isEmpty() || length < 0) {
+                reply("400- bad parameters");
+                return;
+            }
+            if (verb.equals("writefile") && !files.containsKey(path)) {
+                reply("402- file not found");
+                return;
+            }
+            if (verb.equals("sendfile")) {
+                files.remove(path);
+                offset = 0;
+            }
+            reply("204- send binary data");
+            uploadPath = path;
+            uploadOffset = offset;
+            uploadLeft = length;
+            upload = new ByteArrayOutputStream((int) Math.min(length, 1 << 20));
+            if (length == 0) {
+                files.putIfAbsent(path, new byte[0]);
+                upload = null;
+                reply("200- OK");
+            }
+        }
+
+        private void screenshot() {
+            int pitch = SCREEN_WIDTH * 4, size = pitch * SCREEN_HEIGHT;
+            reply("203- binary response follows");
+            reply(String.format("pitch=0x%08x width=0x%08x height=0x%08x format=0x00000000 offsetx=0x00000000 offsety=0x00000000, "
+                    + "framebuffersize=0x%08x sw=0x%08x sh=0x%08x colorspace=0x00000000", pitch, SCREEN_WIDTH, SCREEN_HEIGHT, size,
+                    SCREEN_WIDTH, SCREEN_HEIGHT));
+            replies.write(new byte[size], 0, size);
+        }
+    }
+
+    //wire lines of the reply, including the "." that ends a multi-line response
+    private List<String> execute(String command) {
+        String verb = ConsoleEvents.verbOf(command);
+        return switch (verb) {
+            case "dmversion" -> List.of("200- 2.0.21256.0");
+            case "dbgname" -> List.of("200- " + name);
+            case "getconsoleid" -> List.of("200- consoleid=" + String.format("%010X", name.hashCode() & 0xFFFFFFFFL));
+            case "boxid" -> List.of("200- " + Integer.toUnsignedString(name.hashCode()));
+            case "xuid" -> List.of("200- 0x0009000000000000");
+            case "consoletype" -> List.of("200- devkit");
+            case "systeminfo" -> List.of("202- multiline response follows", "HDD=Enabled", "Type=DevKit",
+                    "Platform=Xenon System=Loopback", "BaseKrnl=2.0.1888.0 Krnl=2.0.17559.0 XDK=2.0.21256.0", ".");
+            case "walkmem" -> walkmem();
+            case "modules", "modsections" -> List.of("202- multiline response follows", ".");
+            case "getmem" -> getmem(command);
+            case "setmem" -> setmem(command);
+            case "getfileattributes" -> getfileattributes(command);
+            case "getfile", "sendfile", "writefile", "screenshot" -> List.of("400- binary transfers need Converse");
+            case "stop" -> {
+                stopped = true;
+                yield List.of("200- OK");
+            }
+            case "go" -> {
+                stopped = false;
+                yield List.of("200- OK");
+            }
+            case "isstopped" -> List.of(stopped ? "200- stopped" : "408- not stopped");
+            case "magicboot" -> {
+                for (Region r : regions.values()) Arrays.fill(r.pages, null);
+                stopped = false;
+                yield List.of("200- OK");
+            }
+            case "consolefeatures" -> List.of(consolefeatures(command));
+            case "bye" -> List.of("200- bye");
+            default -> List.of("407- unknown command");
+        };
+    }
+
+    private List<String> walkmem() {
+        List<String> out = new ArrayList<>();
+        out.add("202- multiline response follows");
+        for (Region r : regions.values()) {
+            out.add(String.format("base=0x%08X size=0x%08X protect=0x%08X phys=0x00000000", r.base, r.size, r.protect));
+        }
+        out.add(".");
+        return out;
+    }
+
+    //the single-line data= form both XbdmXboxConsole transports parse; bytes past the first unmapped one are left out
+    private List<String> getmem(String command) {
+        Map<String, String> f = fields(command);
+        long addr = number(f.get("addr")), length = number(f.get("length"));
+        byte[] data = new byte[(int) length];
+        int n = read(addr, data, (int) length);
+        StringBuilder sb = new StringBuilder("200- data=");
+        Hex.append(sb, data, 0, n);
+        return List.of(sb.toString());
+    }
+
+    private List<String> setmem(String command) {
+        Map<String, String> f = fields(command);
+        byte[] data = Hex.decode(f.getOrDefault("data", ""));
+        int n = write(number(f.get("addr")), data, data.length);
+        return List.of(n == data.length ? "200- set " + n + " bytes" : "404- memory not mapped");
+    }
+
+    private List<String> getfileattributes(String command) {
+        byte[] file = files.get(XbdmResponse.fields(command).getOrDefault("name", "").toLowerCase(Locale.ROOT));
+        if (file == null) return List.of("402- file not found");
+        return List.of("202- multiline response follows", String.format("sizehi=0x0 sizelo=0x%08x createhi=0x0 createlo=0x0 "
+                + "changehi=0x0 changelo=0x0", file.length), ".");
+    }
+
+    //type=13 kernel version, 15 temperature, 16 title ID, 17 console type; anything else answers 0
+    private String consolefeatures(String command) {
+        long type = number(fields(command).get("type"));
+        if (type == 13) return "200- 17559";
+        if (type == 15) return "200- 2d";
+        if (type == 16) return "200- " + Long.toHexString(titleId).toUpperCase(Locale.ROOT);
+        if (type == 17) return "200- DevKit";
+        return "200- 0";
+    }
+
+    private static Map<String, String> fields(String command) {
+        Map<String, String> out = new HashMap<>();
+        for (String part : command.split(" ")) {
+            int eq = part.indexOf('=');
+            if (eq > 0) out.put(part.substring(0, eq).toLowerCase(Locale.ROOT), part.substring(eq + 1));
+        }
+        return out;
+    }
+
+    private static long number(String v) {
+        if (v == null || v.isEmpty()) return 0;
+        return v.startsWith("0x") || v.startsWith("0X") ? Long.parseUnsignedLong(v.substring(2), 16) : Long.parseLong(v);
+    }
+
+    //copies up to len bytes from address, stopping at the first unmapped one
+    private int read(long address, byte[] dst, int len) {
+        int done = 0;
+        while (done < len) {
+            Region r = regionAt(address + done);
+            if (r == null) break;
+            long off = address + done - r.base;
+            int page = (int) (off >>> PAGE_SHIFT), in = (int) (off & (PAGE_SIZE - 1));
+            int n = (int) Math.min(Math.min(len - done, PAGE_SIZE - in), r.size - off);
+            byte[] p = r.pages[page];
+            if (p != null) System.arraycopy(p, in, dst, done, n);
+            else Arrays.fill(dst, done, done + n, (byte) 0);
+            done += n;
+        }
+        return done;
+    }
+
+    private int write(long address, byte[] src, int len) {
+        int done = 0;
+        while (done < len) {
+            Region r = regionAt(address + done);
+            if (r == null) break;
+            long off = address + done - r.base;
+            int page = (int) (off >>> PAGE_SHIFT), in = (int) (off & (PAGE_SIZE - 1));
+            int n = (int) Math.min(Math.min(len - done, PAGE_SIZE - in), r.size - off);
+            byte[] p = r.pages[page];
+            if (p == null) p = r.pages[page] = new byte[PAGE_SIZE];
+            System.arraycopy(src, done, p, in, n);
+            done += n;
+        }
+        return done;
+    }
+
+    private Region regionAt(long address) {
+        Map.Entry<Long, Region> e = regions.floorEntry(address);
+        if (e == null) return null;
+        Region r = e.getValue();
+        return address < r.base + r.size ? r : null;
+    }
+
+    private final class LoopbackDebugTarget implements JRPC.IXboxDebugTarget {
+        @Override
+        public void GetMemory(long address, long length, byte[] outBuf, long[] outRead) {
+            int n;
+            synchronized (LoopbackXboxConsole.this) {
+                n = read(address, outBuf, (int) Math.min(length, outBuf.length));
+            }
+            if (outRead != null && outRead.length > 0) outRead[0] = n;
+        }
+
+        @Override
+        public void InvalidateMemoryCache(boolean unused, long address, long length) {
+            //nothing is cached
+        }
+
+        @Override
+        public void SetMemory(long address, long length, byte[] data, long[] outWritten) {
+            int n;
+            synchronized (LoopbackXboxConsole.this) {
+                n = write(address, data, (int) Math.min(length, data.length));
+            }
+            if (outWritten != null && outWritten.length > 0) outWritten[0] = n;
+        }
+    }
+}
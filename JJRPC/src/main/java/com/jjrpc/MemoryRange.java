@@ -0,0 +1,48 @@
+package com.jjrpc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**A span of console memory, [address, address + length).*/
+public record MemoryRange(long address, int length) {
+
+    public MemoryRange {
+        if (length < 0) throw new IllegalArgumentException("Negative length");
+    }
+
+    public long end() {
+        return address + length;
+    }
+
+    public boolean contains(long address, int length) {
+        return address >= this.address && address + length <= end();
+    }
+
+    /**Sorts the ranges and joins those that overlap or lie at most maxGap bytes apart, so that each result
+     * can be fetched with one getmem. Joined ranges never grow beyond maxLength bytes.*/
+    public static List<MemoryRange> coalesce(Collection<MemoryRange> ranges, int maxGap, int maxLength) {
+        List<MemoryRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(MemoryRange::address));
+        List<MemoryRange> out = new ArrayList<>();
+        long start = 0, end = 0;
+        boolean open = false;
+        for (MemoryRange r : sorted) {
+            if (open && r.address() <= end + maxGap && Math.max(end, r.end()) - start <= maxLength) {
+                end = Math.max(end, r.end());
+                continue;
+            }
+            if (open) out.add(new MemoryRange(start, (int) (end - start)));
+            start = r.address();
+            end = r.end();
+            open = true;
+        }
+        if (open) out.add(new MemoryRange(start, (int) (end - start)));
+        return out;
+    }
+
+    public static List<MemoryRange> coalesce(Collection<MemoryRange> ranges, int maxGap) {
+        return coalesce(ranges, maxGap, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,142 @@
+package com.jjrpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**Resolves many multi-level pointer chains together: all pointers of one depth are fetched in a single
+ * merged read batch, chains sharing a prefix read it once, and intermediate pointers are cached briefly.*/
+public final class PointerResolver {
+
+    /**base + offsets[0] is dereferenced, offsets[1] added, dereferenced again, and so on; the last offset is
+     * added without a final dereference. [[base+0x10]+0x4C]+0x8 is new PointerPath(base, 0x10, 0x4C, 0x8).*/
+    public static final class PointerPath {
+        private final long base;
+        private final long[] offsets;
+
+        public PointerPath(long base, long... offsets) {
+            if (offsets.length == 0) throw new IllegalArgumentException("A pointer path needs at least one offset");
+            this.base = base;
+            this.offsets = offsets.clone();
+        }
+
+        public long base() {
+            return base;
+        }
+
+        public int depth() {
+            return offsets.length;
+        }
+
+        public long offset(int level) {
+            return offsets[level];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PointerPath p && p.base == base && Arrays.equals(p.offsets, offsets);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(base) * 31 + Arrays.hashCode(offsets);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("0x").append(Long.toHexString(base));
+            for (int i = 0; i < offsets.length; i++) {
+                if (i > 0) sb.insert(0, '[').append(']');
+                sb.append(offsets[i] < 0 ? "-0x" : "+0x").append(Long.toHexString(Math.abs(offsets[i])));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final JRPC.IXboxConsole console;
+    private final long ttlNanos;
+    private final int maxGap;
+    private final Map<Long, long[]> cache = new HashMap<>();
+
+    public PointerResolver(JRPC.IXboxConsole console) {
+        this(console, 100, 64);
+    }
+
+    /**@param ttlMillis how long a fetched pointer is reused, 0 to always read
+     * @param maxGap pointers closer than this many bytes are fetched in one getmem*/
+    public PointerResolver(JRPC.IXboxConsole console, long ttlMillis, int maxGap) {
+        this.console = console;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxGap = maxGap;
+    }
+
+    public long resolve(PointerPath path) {
+        return resolve(List.of(path))[0];
+    }
+
+    /**Final addresses in the order of paths; 0 where a chain hits a null or unmapped pointer.
+     * A failure of the link itself is thrown as a ComException.*/
+    public synchronized long[] resolve(List<PointerPath> paths) {
+        int n = paths.size();
+        long[] at = new long[n];
+        int depth = 0;
+        for (int i = 0; i < n; i++) {
+            at[i] = paths.get(i).base() + paths.get(i).offset(0);
+            depth = Math.max(depth, paths.get(i).depth());
+        }
+        long now = System.nanoTime();
+        for (int level = 1; level < depth; level++) {
+            List<Long> wanted = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (paths.get(i).depth() <= level || at[i] == 0) continue;
+                long[] c = cache.get(at[i]);
+                if (c == null || now - c[1] > ttlNanos) wanted.add(at[i]);
+            }
+            fetch(wanted, now);
+            for (int i = 0; i < n; i++) {
+                if (paths.get(i).depth() <= level || at[i] == 0) continue;
+                long[] c = cache.get(at[i]);
+                long ptr = c == null ? 0 : c[0];
+                at[i] = ptr == 0 ? 0 : ptr + paths.get(i).offset(level);
+            }
+        }
+        return at;
+    }
+
+    public synchronized void invalidate() {
+        cache.clear();
+    }
+
+    //reads each distinct address once, joining nearby ones into a single getmem; only values actually read are
+    //cached, an unmapped address is dropped from the cache and resolves to 0, and a transport failure is rethrown
+    private void fetch(List<Long> wanted, long now) {
+        if (wanted.isEmpty()) return;
+        long[] addresses = wanted.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        List<MemoryRange> ranges = new ArrayList<>(addresses.length);
+        for (long a : addresses) ranges.add(new MemoryRange(a, 4));
+        long[] read = new long[1];
+        int next = 0;
+        for (MemoryRange r : MemoryRange.coalesce(ranges, maxGap, 64 * 1024)) {
+            byte[] buf = new byte[r.length()];
+            read[0] = 0;
+            try {
+                console.DebugTarget().GetMemory(r.address(), r.length(), buf, read);
+            } catch (JRPC.ComException e) {
+                if (e.getErrorCode() != JRPC.XBDM_MEMUNMAPPED) throw e;
+                read[0] = 0;
+            }
+            for (; next < addresses.length && r.contains(addresses[next], 4); next++) {
+                int off = (int) (addresses[next] - r.address());
+                if (off + 4 > read[0]) {
+                    cache.remove(addresses[next]);
+                    continue;
+                }
+                long v = ((buf[off] & 0xFFL) << 24) | ((buf[off + 1] & 0xFFL) << 16) | ((buf[off + 2] & 0xFFL) << 8) | (buf[off + 3] & 0xFFL);
+                cache.put(addresses[next], new long[]{v, now});
+            }
+        }
+        if (cache.size() > 65536) cache.values().removeIf(c -> now - c[1] > ttlNanos);
+    }
+}
@@ -0,0 +1,343 @@
+package com.jjrpc;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**Page cache in front of console memory that reads ahead of sequential and strided access. Each calling thread is
+ * followed separately: once two consecutive reads move by the same distance, the pages the next reads will touch
+ * are fetched on a background thread, contiguous pages in one getmem. When the thread's reads stop following the
+ * pattern, its prefetches that have not been used are cancelled and dropped.
+ * Pages are kept for maxAgeMillis and the cache holds at most capacity pages; write() and invalidate() drop pages
+ * that are known to have changed.*/
+public final class ReadAheadReader implements Closeable {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int DEFAULT_DEPTH = 8;
+    public static final int DEFAULT_MAX_AGE_MILLIS = 1000;
+
+    private static final int MAX_GAP_PAGES = 3;
+
+    private static final class Page {
+        final long address;
+        final boolean prefetched;
+        final CompletableFuture<byte[]> data = new CompletableFuture<>();
+        volatile long loadedNanos;
+        volatile boolean used;
+
+        Page(long address, boolean prefetched) {
+            this.address = address;
+            this.prefetched = prefetched;
+        }
+    }
+
+    //access pattern of one calling thread
+    private static final class Stream {
+        long lastAddress = -1;
+        long stride;
+        boolean confirmed;
+        final List<Page> outstanding = new ArrayList<>();
+    }
+
+    private final JRPC.IXboxConsole console;
+    private final int pageSize;
+    private final int capacity;
+    private final int depth;
+    private final long maxAgeNanos;
+    private final LinkedHashMap<Long, Page> pages = new LinkedHashMap<>(64, 0.75f, true);
+    private final ThreadLocal<Stream> streams = ThreadLocal.withInitial(Stream::new);
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong wasted = new AtomicLong();
+
+    public ReadAheadReader(JRPC.IXboxConsole console) {
+        this(console, DEFAULT_PAGE_SIZE, DEFAULT_CAPACITY, DEFAULT_DEPTH, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**@param pageSize a power of two
+     * @param capacity most pages held, prefetched or not
+     * @param depth pages (or strides, for strides longer than a page) fetched ahead of the last read*/
+    public ReadAheadReader(JRPC.IXboxConsole console, int pageSize, int capacity, int depth, int maxAgeMillis) {
+        if (Integer.bitCount(pageSize) != 1) throw new IllegalArgumentException("Page size must be a power of two");
+        this.console = console;
+        this.pageSize = pageSize;
+        this.capacity = Math.max(capacity, 2 * depth + 2);
+        this.depth = depth;
+        this.maxAgeNanos = maxAgeMillis * 1_000_000L;
+        this.pool = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "jjrpc-readahead");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**As JRPC.GetMemory: bytes that could not be read are left zero.*/
+    public byte[] read(long address, int length) {
+        byte[] out = new byte[length];
+        read(address, out, 0, length);
+        return out;
+    }
+
+    /**@return bytes copied; fewer than length when the read runs into memory the console would not return*/
+    public int read(long address, byte[] dst, int off, int length) {
+        int done = 0;
+        //pages after the first of a missing run, fetched along with it
+        Map<Long, byte[]> fetched = new HashMap<>();
+        while (done < length) {
+            long a = address + done;
+            long base = a & -pageSize;
+            byte[] p = fetched.remove(base);
+            if (p == null) p = page(base, address + length, fetched);
+            int in = (int) (a - base);
+            int n = Math.min(length - done, p.length - in);
+            if (n <= 0) break;
+            System.arraycopy(p, in, dst, off + done, n);
+            done += n;
+            if (in + n == p.length && p.length < pageSize) break;
+        }
+        observe(streams.get(), address, length);
+        return done;
+    }
+
+    /**Writes through to the console and drops the cached pages the write covers.*/
+    public void write(long address, byte[] data) {
+        JRPC.SetMemory(console, address, data);
+        invalidate(address, data.length);
+    }
+
+    public synchronized void invalidate(long address, long length) {
+        long first = address & -pageSize;
+        for (long base = first; base < address + length; base += pageSize) drop(pages.remove(base));
+    }
+
+    public synchronized void invalidate() {
+        for (Page p : pages.values()) drop(p);
+        pages.clear();
+    }
+
+    /**Pages found already cached or in flight when a read needed them.*/
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**Pages a read had to fetch on the calling thread.*/
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getPrefetched() {
+        return prefetched.get();
+    }
+
+    /**Prefetched pages cancelled or evicted before any read used them.*/
+    public long getWasted() {
+        return wasted.get();
+    }
+
+    //the page at base, from the cache or fetched now. A miss also claims the missing pages that follow it up to end,
+    //at most half the cache, and fetches them in the same getmem; their data goes into fetched
+    private byte[] page(long base, long end, Map<Long, byte[]> fetched) {
+        while (true) {
+            Page p;
+            List<Page> run = null;
+            synchronized (this) {
+                p = pages.get(base);
+                if (p == null || stale(p) || p.data.isCompletedExceptionally()) {
+                    run = new ArrayList<>();
+                    for (long b = base; b < end && run.size() < Math.max(1, capacity / 2); b += pageSize) {
+                        Page q = pages.get(b);
+                        if (b != base && q != null && !stale(q) && !q.data.isCompletedExceptionally()) break;
+                        drop(q);
+                        q = new Page(b, false);
+                        put(q);
+                        run.add(q);
+                    }
+                    p = run.get(0);
+                }
+            }
+            if (run != null) {
+                misses.addAndGet(run.size());
+                try {
+                    byte[][] data = fetch(base, run.size());
+                    for (int i = 0; i < run.size(); i++) {
+                        complete(run.get(i), data[i]);
+                        if (i > 0) fetched.put(run.get(i).address, data[i]);
+                    }
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        for (Page q : run) pages.remove(q.address, q);
+                    }
+                    for (Page q : run) q.data.completeExceptionally(e);
+                    throw e;
+                }
+            } else {
+                hits.incrementAndGet();
+            }
+            p.used = true;
+            try {
+                return p.data.join();
+            } catch (CancellationException e) {
+                //a prefetch dropped by another thread's pattern break; fetch it here instead
+            } catch (CompletionException e) {
+                synchronized (this) {
+                    pages.remove(base, p);
+                }
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+    }
+
+    private void observe(Stream s, long address, int length) {
+        if (s.lastAddress < 0) {
+            s.lastAddress = address;
+            return;
+        }
+        long stride = address - s.lastAddress;
+        if (stride == 0) return;
+        s.lastAddress = address;
+        if (stride != s.stride) {
+            if (s.confirmed) cancel(s);
+            s.stride = stride;
+            s.confirmed = false;
+            return;
+        }
+        s.confirmed = true;
+        prefetch(s, address, length);
+    }
+
+    private void prefetch(Stream s, long address, int length) {
+        if (pool.isShutdown()) return;
+        s.outstanding.removeIf(p -> p.data.isDone() || p.used);
+        //for strides within a page the next pages in that direction, otherwise the pages under the next reads
+        TreeSet<Long> wanted = new TreeSet<>();
+        if (Math.abs(s.stride) < pageSize) {
+            long edge = (s.stride > 0 ? address + length - 1 : address) & -pageSize;
+            for (int k = 1; k <= depth; k++) wanted.add(edge + Long.signum(s.stride) * (long) k * pageSize);
+        } else {
+            //at most half the cache, so read-ahead never evicts the pages it is about to use; a read too large
+            //for even one stride to fit is not read ahead
+            int cap = Math.max(1, capacity / 2);
+            long footprint = ((address + Math.max(length, 1) - 1) / pageSize) - (address / pageSize) + 1;
+            if (footprint > cap) return;
+            for (int k = 1; k <= depth && wanted.size() + footprint <= cap; k++) {
+                long a = address + k * s.stride;
+                for (long b = a & -pageSize; b < a + Math.max(length, 1); b += pageSize) wanted.add(b);
+            }
+        }
+        long nearest = (s.stride > 0 ? wanted.first() : wanted.last());
+        List<Page> missing = new ArrayList<>();
+        synchronized (this) {
+            for (long b : wanted) {
+                Page p = pages.get(b);
+                if (p != null && !stale(p) && !p.data.isCompletedExceptionally()) continue;
+                drop(p);
+                missing.add(new Page(b, true));
+            }
+            //refill in batches: wait until half the window is gone unless the next page is already missing
+            boolean urgent = missing.stream().anyMatch(p -> p.address == nearest);
+            if (missing.isEmpty() || (!urgent && missing.size() < Math.max(1, depth / 2))) return;
+            for (Page p : missing) put(p);
+        }
+        s.outstanding.addAll(missing);
+        prefetched.addAndGet(missing.size());
+        for (List<Page> run : runs(missing)) {
+            try {
+                pool.execute(() -> load(run));
+            } catch (RejectedExecutionException e) {
+                //closed meanwhile
+                for (Page p : run) p.data.cancel(false);
+            }
+        }
+    }
+
+    //one getmem per run of pages no more than MAX_GAP_PAGES apart; reading a few unwanted pages beats a round trip
+    private List<List<Page>> runs(List<Page> sorted) {
+        List<List<Page>> out = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= sorted.size(); i++) {
+            if (i < sorted.size() && sorted.get(i).address - sorted.get(i - 1).address <= (MAX_GAP_PAGES + 1L) * pageSize) continue;
+            out.add(sorted.subList(start, i));
+            start = i;
+        }
+        return out;
+    }
+
+    //pages cancelled while the run waited in the queue are left out, which can shorten or split the getmem
+    private void load(List<Page> run) {
+        List<Page> live = new ArrayList<>(run.size());
+        for (Page p : run) if (!p.data.isCancelled()) live.add(p);
+        for (List<Page> part : runs(live)) {
+            try {
+                long first = part.get(0).address;
+                byte[][] data = fetch(first, (int) ((part.get(part.size() - 1).address - first) / pageSize) + 1);
+                for (Page p : part) complete(p, data[(int) ((p.address - first) / pageSize)]);
+            } catch (RuntimeException e) {
+                for (Page p : part) p.data.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void cancel(Stream s) {
+        synchronized (this) {
+            for (Page p : s.outstanding) {
+                if (p.used || p.data.isDone()) continue;
+                p.data.cancel(false);
+                pages.remove(p.address, p);
+                wasted.incrementAndGet();
+            }
+        }
+        s.outstanding.clear();
+    }
+
+    //reads count pages from base in one request; pages past the end of what the console returned come back short
+    private byte[][] fetch(long base, int count) {
+        byte[] buf = new byte[count * pageSize];
+        int n = JRPC.ReadMemory(console, base, buf, 0, buf.length);
+        byte[][] out = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            int len = Math.max(0, Math.min(pageSize, n - i * pageSize));
+            out[i] = Arrays.copyOfRange(buf, i * pageSize, i * pageSize + len);
+        }
+        return out;
+    }
+
+    private static void complete(Page p, byte[] data) {
+        p.loadedNanos = System.nanoTime();
+        p.data.complete(data);
+    }
+
+    private boolean stale(Page p) {
+        return p.data.isDone() && System.nanoTime() - p.loadedNanos > maxAgeNanos;
+    }
+
+    //called holding this
+    private void put(Page p) {
+        pages.put(p.address, p);
+        Iterator<Page> it = pages.values().iterator();
+        while (pages.size() > capacity && it.hasNext()) {
+            Page eldest = it.next();
+            it.remove();
+            drop(eldest);
+        }
+    }
+
+    //called holding this, for a page already out of the map
+    private void drop(Page p) {
+        if (p == null) return;
+        if (p.prefetched && !p.used) wasted.incrementAndGet();
+        p.data.cancel(false);
+    }
+
+    /**Cancels pending prefetches; reads still work afterwards but no longer read ahead.*/
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        invalidate();
+    }
+}
@@ -0,0 +1,159 @@
+package com.jjrpc;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**Decorator that writes every command and memory transfer, with its completion time, to a wire log.
+ * Play the log back with ReplayXboxConsole.*/
+public final class RecordingXboxConsole implements JRPC.IXboxConsoleDecorator, Closeable {
+
+    private final JRPC.IXboxConsole delegate;
+    private final DataOutputStream out;
+    private final RecordingDebugTarget debugTarget = new RecordingDebugTarget();
+    private long start = -1;
+
+    public RecordingXboxConsole(JRPC.IXboxConsole delegate, Path file) throws IOException {
+        this(delegate, Files.newOutputStream(file), true);
+    }
+
+    public RecordingXboxConsole(JRPC.IXboxConsole delegate, OutputStream out) throws IOException {
+        this(delegate, out, false);
+    }
+
+    //ownsStream: the stream was opened here, so a failed header must not leak it
+    private RecordingXboxConsole(JRPC.IXboxConsole delegate, OutputStream out, boolean ownsStream) throws IOException {
+        this.delegate = delegate;
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        try {
+            WireLog.writeHeader(this.out, delegate.getIPAddress());
+        } catch (IOException | RuntimeException e) {
+            if (ownsStream) {
+                try {
+                    out.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public JRPC.IXboxConsole getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public long getIPAddress() {
+        return delegate.getIPAddress();
+    }
+
+    @Override
+    public void setConnectTimeout(int ms) {
+        delegate.setConnectTimeout(ms);
+    }
+
+    @Override
+    public void setConversationTimeout(int ms) {
+        delegate.setConversationTimeout(ms);
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return delegate.getConnectTimeout();
+    }
+
+    @Override
+    public int getConversationTimeout() {
+        return delegate.getConversationTimeout();
+    }
+
+    @Override
+    public JRPC.IXboxDebugTarget getDebugTarget() {
+        return debugTarget;
+    }
+
+    @Override
+    public long OpenConnection(String flagsOrNull) {
+        long id;
+        try {
+            id = delegate.OpenConnection(flagsOrNull);
+        } catch (JRPC.ComException e) {
+            record(error(WireLog.openKey(flagsOrNull), e));
+            throw e;
+        }
+        record(new WireLog.Record(WireLog.OPEN, 0, flagsOrNull, null, 0, id, null));
+        return id;
+    }
+
+    @Override
+    public void SendTextCommand(long connectionId, String command, String[] outResponse) {
+        try {
+            delegate.SendTextCommand(connectionId, command, outResponse);
+        } catch (JRPC.ComException e) {
+            record(error(command, e));
+            throw e;
+        }
+        record(new WireLog.Record(WireLog.TEXT, 0, command, outResponse[0], 0, 0, null));
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private static WireLog.Record error(String key, JRPC.ComException e) {
+        return new WireLog.Record(WireLog.ERROR, 0, key, e.getMessage(), 0, e.getErrorCode() & 0xFFFFFFFFL, null);
+    }
+
+    private synchronized void record(WireLog.Record r) {
+        long now = System.nanoTime();
+        if (start < 0) start = now;
+        try {
+            WireLog.write(out, new WireLog.Record(r.kind, now - start, r.text, r.response, r.address, r.length, r.data));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Wire log write failed", e);
+        }
+    }
+
+    private final class RecordingDebugTarget implements JRPC.IXboxDebugTarget {
+        @Override
+        public void GetMemory(long address, long length, byte[] outBuf, long[] outRead) {
+            long[] read = new long[1];
+            try {
+                delegate.getDebugTarget().GetMemory(address, length, outBuf, read);
+            } catch (JRPC.ComException e) {
+                record(error(WireLog.getmemKey(address, length), e));
+                throw e;
+            }
+            int n = (int) Math.min(read[0], outBuf.length);
+            record(new WireLog.Record(WireLog.GETMEM, 0, null, null, address, length, Arrays.copyOf(outBuf, n)));
+            if (outRead != null && outRead.length > 0) outRead[0] = read[0];
+        }
+
+        @Override
+        public void InvalidateMemoryCache(boolean unused, long address, long length) {
+            delegate.getDebugTarget().InvalidateMemoryCache(unused, address, length);
+        }
+
+        @Override
+        public void SetMemory(long address, long length, byte[] data, long[] outWritten) {
+            long[] written = new long[1];
+            int n = (int) Math.min(length, data.length);
+            try {
+                delegate.getDebugTarget().SetMemory(address, length, data, written);
+            } catch (JRPC.ComException e) {
+                record(error(WireLog.setmemKey(address, n), e));
+                throw e;
+            }
+            record(new WireLog.Record(WireLog.SETMEM, 0, null, null, address, written[0], Arrays.copyOf(data, n)));
+            if (outWritten != null && outWritten.length > 0) outWritten[0] = written[0];
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.jjrpc;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**Change detection for mirrored regions: each region is hashed on the console with the kernel's XeCryptSha
+ * and only downloaded when its digest differs from the previous poll. Costs one call plus a 20 byte read
+ * per unchanged region instead of the whole region.*/
+public final class RemoteDigests {
+
+    public static final String KERNEL = "xboxkrnl.exe";
+    public static final int XE_CRYPT_SHA = 402;
+    public static final int DIGEST_SIZE = 20;
+
+    private final JRPC.IXboxConsole console;
+    private final long scratch;
+    private final String module;
+    private final int ordinal;
+    private final Map<MemoryRange, byte[]> last = new HashMap<>();
+
+    /**@param scratchAddress 20 writable bytes on the console that receive each digest*/
+    public RemoteDigests(JRPC.IXboxConsole console, long scratchAddress) {
+        this(console, scratchAddress, KERNEL, XE_CRYPT_SHA);
+    }
+
+    /**@param module and ordinal of an export with XeCryptSha's signature (in1, len1, in2, len2, in3, len3, out, outLen)*/
+    public RemoteDigests(JRPC.IXboxConsole console, long scratchAddress, String module, int ordinal) {
+        this.console = console;
+        this.scratch = scratchAddress;
+        this.module = module;
+        this.ordinal = ordinal;
+    }
+
+    public byte[] digest(MemoryRange r) {
+        long fn = JRPC.SessionOf(console).resolveFunction(console, module, ordinal);
+        return JRPC.SessionOf(console).exclusive(() -> {
+            JRPC.CallVoid(console, fn, r.address(), (long) r.length(), 0L, 0L, 0L, 0L, scratch, (long) DIGEST_SIZE);
+            return JRPC.GetMemory(console, scratch, DIGEST_SIZE);
+        });
+    }
+
+    /**Returns the contents of every region that changed since the last poll, in the given order.
+     * Regions seen for the first time always count as changed.*/
+    public synchronized Map<MemoryRange, byte[]> poll(Collection<MemoryRange> regions) {
+        Map<MemoryRange, byte[]> changed = new LinkedHashMap<>();
+        for (MemoryRange r : regions) {
+            byte[] d = digest(r);
+            if (Arrays.equals(d, last.get(r))) continue;
+            changed.put(r, JRPC.GetMemory(console, r.address(), r.length()));
+            last.put(r, d);
+        }
+        return changed;
+    }
+
+    public synchronized boolean hasChanged(MemoryRange r) {
+        byte[] d = digest(r);
+        boolean changed = !Arrays.equals(d, last.get(r));
+        last.put(r, d);
+        return changed;
+    }
+
+    public synchronized void forget() {
+        last.clear();
+    }
+}
@@ -0,0 +1,121 @@
+package com.jjrpc;
+
+import java.util.Arrays;
+
+/**Bulk copy and fill of console memory done on the console itself by calling memcpy/memset style exports,
+ * so no data crosses the link. When no export is configured or it cannot be resolved, the work falls back
+ * to chunked getmem/setmem through this machine, which throws a ComException when the console reads or writes
+ * fewer bytes than asked, e.g. at an unmapped page.*/
+public final class RemoteMemory {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final long UNRESOLVED = -1;
+    private static final long UNAVAILABLE = 0;
+
+    private final JRPC.IXboxConsole console;
+    private final String module;
+    private final int memcpyOrdinal;
+    private final int memsetOrdinal;
+    private long memcpy = UNRESOLVED;
+    private long memset = UNRESOLVED;
+
+    /**Transfer-only helper, always uses the chunked fallback.*/
+    public RemoteMemory(JRPC.IXboxConsole console) {
+        this(console, null, 0, 0);
+    }
+
+    /**@param module module exporting memcpy(dst, src, len) and memset(dst, value, len); ordinals of 0 skip that export*/
+    public RemoteMemory(JRPC.IXboxConsole console, String module, int memcpyOrdinal, int memsetOrdinal) {
+        this.console = console;
+        this.module = module;
+        this.memcpyOrdinal = memcpyOrdinal;
+        this.memsetOrdinal = memsetOrdinal;
+    }
+
+    /**Uses functions at known addresses, e.g. the title's own memcpy/memset, instead of resolving exports.
+     * An address of 0 selects the fallback for that operation.*/
+    public synchronized RemoteMemory useAddresses(long memcpyAddress, long memsetAddress) {
+        this.memcpy = memcpyAddress;
+        this.memset = memsetAddress;
+        return this;
+    }
+
+    public boolean hasRemoteCopy() {
+        return copyFunction() != UNAVAILABLE;
+    }
+
+    public boolean hasRemoteFill() {
+        return fillFunction() != UNAVAILABLE;
+    }
+
+    public void copyRemote(long src, long dst, long len) {
+        if (len <= 0 || src == dst) return;
+        long fn = copyFunction();
+        if (fn != UNAVAILABLE) {
+            JRPC.CallVoid(console, fn, dst, src, len);
+            return;
+        }
+        //copy back to front when the destination overlaps the end of the source, like memmove
+        boolean backwards = dst > src && dst < src + len;
+        byte[] buf = new byte[(int) Math.min(CHUNK, len)];
+        long[] n = new long[1];
+        for (long done = 0; done < len; ) {
+            int size = (int) Math.min(buf.length, len - done);
+            long off = backwards ? len - done - size : done;
+            byte[] chunk = size == buf.length ? buf : new byte[size];
+            n[0] = 0;
+            console.DebugTarget().GetMemory(src + off, size, chunk, n);
+            if (n[0] != size) throw shortTransfer("read", src + off, n[0], size);
+            n[0] = 0;
+            console.DebugTarget().SetMemory(dst + off, size, chunk, n);
+            if (n[0] != size) throw shortTransfer("write", dst + off, n[0], size);
+            done += size;
+        }
+    }
+
+    public void fillRemote(long dst, int value, long len) {
+        if (len <= 0) return;
+        long fn = fillFunction();
+        if (fn != UNAVAILABLE) {
+            JRPC.CallVoid(console, fn, dst, value & 0xFF, len);
+            return;
+        }
+        byte[] buf = new byte[(int) Math.min(CHUNK, len)];
+        Arrays.fill(buf, (byte) value);
+        long[] n = new long[1];
+        for (long done = 0; done < len; done += buf.length) {
+            int size = (int) Math.min(buf.length, len - done);
+            n[0] = 0;
+            console.DebugTarget().SetMemory(dst + done, size, buf, n);
+            if (n[0] != size) throw shortTransfer("write", dst + done, n[0], size);
+        }
+    }
+
+    //the fallback stops at the first chunk the console did not take in full; earlier chunks stay copied
+    private static JRPC.ComException shortTransfer(String op, long address, long done, int size) {
+        return new JRPC.ComException(0x82DA0007, "Short " + op + " at 0x" + Long.toHexString(address) + ": " + done + " of " + size);
+    }
+
+    private synchronized long copyFunction() {
+        if (memcpy == UNRESOLVED) memcpy = resolve(memcpyOrdinal);
+        return memcpy == UNRESOLVED ? UNAVAILABLE : memcpy;
+    }
+
+    private synchronized long fillFunction() {
+        if (memset == UNRESOLVED) memset = resolve(memsetOrdinal);
+        return memset == UNRESOLVED ? UNAVAILABLE : memset;
+    }
+
+    //only an answer from the console, an export of 0 or a JRPC error reply, settles that the export is unavailable;
+    //when the link failed the export stays unresolved, so this call uses the fallback and the next one asks again
+    private long resolve(int ordinal) {
+        if (module == null || ordinal == 0) return UNAVAILABLE;
+        try {
+            return JRPC.SessionOf(console).resolveFunction(console, module, ordinal);
+        } catch (RuntimeException e) {
+            for (Throwable t = e; t != null; t = t.getCause())
+                if (t instanceof JRPC.ComException) return UNRESOLVED;
+            return UNAVAILABLE;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.jjrpc;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**Serves the responses of a wire log written by RecordingXboxConsole, in order, without a console.
+ * Calls must follow the recorded sequence; a call that does not match the next record throws. A getmem recorded
+ * as consecutive chunks, as JRPC.ReadMemory splits reads over a socket console, is served to a single larger read.*/
+public final class ReplayXboxConsole implements JRPC.IXboxConsole {
+
+    private final List<WireLog.Record> records;
+    private final long ip;
+    private final boolean realtime;
+    private final ReplayDebugTarget debugTarget = new ReplayDebugTarget();
+    private int connectTimeout = 5000;
+    private int conversationTimeout = 2000;
+    private int position;
+    private long start = -1;
+
+    public ReplayXboxConsole(Path file, boolean realtime) throws IOException {
+        this(Files.newInputStream(file), realtime);
+    }
+
+    /**@param realtime when true each response is held back until its recorded time, otherwise served at once*/
+    public ReplayXboxConsole(InputStream in, boolean realtime) throws IOException {
+        this.realtime = realtime;
+        this.records = new ArrayList<>();
+        try (DataInputStream din = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            this.ip = WireLog.readHeader(din);
+            WireLog.Record r;
+            while ((r = WireLog.read(din)) != null) records.add(r);
+        }
+    }
+
+    public synchronized void rewind() {
+        position = 0;
+        start = -1;
+    }
+
+    public synchronized int remaining() {
+        return records.size() - position;
+    }
+
+    @Override
+    public long getIPAddress() {
+        return ip;
+    }
+
+    @Override
+    public void setConnectTimeout(int ms) {
+        this.connectTimeout = ms;
+    }
+
+    @Override
+    public void setConversationTimeout(int ms) {
+        this.conversationTimeout = ms;
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    @Override
+    public int getConversationTimeout() {
+        return conversationTimeout;
+    }
+
+    @Override
+    public JRPC.IXboxDebugTarget getDebugTarget() {
+        return debugTarget;
+    }
+
+    @Override
+    public long OpenConnection(String flagsOrNull) {
+        return next(WireLog.OPEN, WireLog.openKey(flagsOrNull)).length;
+    }
+
+    @Override
+    public void SendTextCommand(long connectionId, String command, String[] outResponse) {
+        outResponse[0] = next(WireLog.TEXT, command).response;
+    }
+
+    private synchronized WireLog.Record next(int kind, String key) {
+        if (position >= records.size())
+            throw new JRPC.ComException(0x82DA0007, "Replay exhausted at: " + key);
+        WireLog.Record r = records.get(position);
+        String expected = WireLog.key(r);
+        if ((r.kind != kind && r.kind != WireLog.ERROR) || !expected.equals(key))
+            throw new JRPC.ComException(0x82DA0007, "Replay mismatch at record " + position + ": expected '" + expected + "' but got '" + key + "'");
+        position++;
+        pace(r);
+        if (r.kind == WireLog.ERROR) throw new JRPC.ComException((int) r.length, r.response);
+        return r;
+    }
+
+    private synchronized WireLog.Record peek() {
+        return position < records.size() ? records.get(position) : null;
+    }
+
+    private void pace(WireLog.Record r) {
+        long now = System.nanoTime();
+        if (start < 0) start = now - r.nanos;
+        if (!realtime) return;
+        long wait = start + r.nanos - now;
+        if (wait <= 0) return;
+        try {
+            Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class ReplayDebugTarget implements JRPC.IXboxDebugTarget {
+        @Override
+        public void GetMemory(long address, long length, byte[] outBuf, long[] outRead) {
+            int n = 0;
+            synchronized (ReplayXboxConsole.this) {
+                WireLog.Record r = peek();
+                if (r == null || r.kind != WireLog.GETMEM || r.address != address || r.length >= length) {
+                    r = next(WireLog.GETMEM, WireLog.getmemKey(address, length));
+                    n = Math.min(outBuf.length, r.data.length);
+                    System.arraycopy(r.data, 0, outBuf, 0, n);
+                } else {
+                    //recorded in chunks: take consecutive getmem records until the read is covered or one came back short
+                    while (n < length && n < outBuf.length) {
+                        r = peek();
+                        long want = r != null && r.kind == WireLog.GETMEM && r.address == address + n ? Math.min(r.length, length - n) : length - n;
+                        r = next(WireLog.GETMEM, WireLog.getmemKey(address + n, want));
+                        int got = Math.min(outBuf.length - n, r.data.length);
+                        System.arraycopy(r.data, 0, outBuf, n, got);
+                        n += got;
+                        if (r.data.length < r.length) break;
+                    }
+                }
+            }
+            if (outRead != null && outRead.length > 0) outRead[0] = n;
+        }
+
+        @Override
+        public void InvalidateMemoryCache(boolean unused, long address, long length) {
+            //not recorded
+        }
+
+        @Override
+        public void SetMemory(long address, long length, byte[] data, long[] outWritten) {
+            WireLog.Record r = next(WireLog.SETMEM, WireLog.setmemKey(address, Math.min(length, data.length)));
+            if (outWritten != null && outWritten.length > 0) outWritten[0] = r.length;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.jjrpc;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**Puts a priority scheduler in front of one console connection. Each view(Priority) is an IXboxConsole whose
+ * commands and memory transfers are queued and executed one at a time on a single dispatcher thread.
+ * Higher classes go first, threads within a class take turns, and getmem/setmem larger than the chunk size
+ * are split so that a waiting interactive request runs between two chunks of a bulk transfer.
+ * The views share the console's JRPC session, so a JRPC call made through one view excludes calls through the others.*/
+public final class ScheduledXboxConsole implements Closeable {
+
+    public enum Priority {
+        INTERACTIVE, NORMAL, BULK
+    }
+
+    private final JRPC.IXboxConsole console;
+    private final int chunkSize;
+    private final int starvationLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final List<LinkedHashMap<Object, ArrayDeque<Job>>> classes = new ArrayList<>();
+    private final Thread dispatcher;
+    //per class, jobs dispatched from other classes while it had work waiting
+    private final int[] skipped = new int[Priority.values().length];
+    private boolean closed;
+
+    public ScheduledXboxConsole(JRPC.IXboxConsole console) {
+        this(console, 16 * 1024, 8);
+    }
+
+    /**@param chunkSize largest getmem/setmem issued in one piece
+     * @param starvationLimit a class passed over for this many jobs runs its next job ahead of the higher classes;
+     *                        each class is counted separately, so every lower class is reached while higher ones stay busy*/
+    public ScheduledXboxConsole(JRPC.IXboxConsole console, int chunkSize, int starvationLimit) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+        this.console = console;
+        this.chunkSize = chunkSize;
+        this.starvationLimit = Math.max(1, starvationLimit);
+        for (int i = 0; i < Priority.values().length; i++) classes.add(new LinkedHashMap<>());
+        this.dispatcher = new Thread(this::dispatch, "ScheduledXboxConsole-" + JRPC.XboxIP(console));
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public JRPC.IXboxConsole getConsole() {
+        return console;
+    }
+
+    public JRPC.IXboxConsole view(Priority priority) {
+        return new View(priority);
+    }
+
+    public int pending() {
+        lock.lock();
+        try {
+            int n = 0;
+            for (Map<Object, ArrayDeque<Job>> flows : classes)
+                for (ArrayDeque<Job> q : flows.values()) n += q.size();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        List<Job> dropped = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (Map<Object, ArrayDeque<Job>> flows : classes) {
+                for (ArrayDeque<Job> q : flows.values()) dropped.addAll(q);
+                flows.clear();
+            }
+            ready.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Job j : dropped) j.done.completeExceptionally(new JRPC.ComException(0x82DA0007, "Scheduler closed"));
+    }
+
+    private static final class Job {
+        final Runnable work;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Job(Runnable work) {
+            this.work = work;
+        }
+    }
+
+    private List<Job> submit(Priority priority, List<Runnable> parts) {
+        List<Job> jobs = new ArrayList<>(parts.size());
+        for (Runnable r : parts) jobs.add(new Job(r));
+        lock.lock();
+        try {
+            if (closed) throw new JRPC.ComException(0x82DA0007, "Scheduler closed");
+            classes.get(priority.ordinal()).computeIfAbsent(Thread.currentThread(), k -> new ArrayDeque<>()).addAll(jobs);
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+        return jobs;
+    }
+
+    private void run(Priority priority, List<Runnable> parts) {
+        if (Thread.currentThread() == dispatcher) {
+            for (Runnable r : parts) r.run();
+            return;
+        }
+        List<Job> jobs = submit(priority, parts);
+        for (Job j : jobs) {
+            try {
+                j.done.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+    }
+
+    private void run(Priority priority, Runnable work) {
+        run(priority, List.of(work));
+    }
+
+    private Job next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) return null;
+                int pick = -1;
+                for (int i = 0; i < classes.size(); i++) {
+                    if (classes.get(i).isEmpty()) {
+                        skipped[i] = 0;
+                        continue;
+                    }
+                    if (pick < 0) pick = i;
+                    //the class starved longest wins; ties go to the higher class
+                    else if (skipped[i] >= starvationLimit && skipped[i] > (skipped[pick] >= starvationLimit ? skipped[pick] : -1)) pick = i;
+                }
+                if (pick < 0) {
+                    ready.await();
+                    continue;
+                }
+                for (int i = 0; i < classes.size(); i++) {
+                    if (i == pick) skipped[i] = 0;
+                    else if (!classes.get(i).isEmpty()) skipped[i]++;
+                }
+                return take(classes.get(pick));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //round robin between flows: take the head of the first flow and move that flow to the back
+    private static Job take(LinkedHashMap<Object, ArrayDeque<Job>> flows) {
+        Iterator<Map.Entry<Object, ArrayDeque<Job>>> it = flows.entrySet().iterator();
+        Map.Entry<Object, ArrayDeque<Job>> e = it.next();
+        it.remove();
+        Job j = e.getValue().poll();
+        if (!e.getValue().isEmpty()) flows.put(e.getKey(), e.getValue());
+        return j;
+    }
+
+    private void dispatch() {
+        while (true) {
+            Job j;
+            try {
+                j = next();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (j == null) return;
+            try {
+                j.work.run();
+                j.done.complete(null);
+            } catch (Throwable t) {
+                j.done.completeExceptionally(t);
+            }
+        }
+    }
+
+    private final class View implements JRPC.IXboxConsoleDecorator {
+        private final Priority priority;
+        private final ViewDebugTarget debugTarget = new ViewDebugTarget();
+
+        View(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public JRPC.IXboxConsole getDelegate() {
+            return console;
+        }
+
+        @Override
+        public long getIPAddress() {
+            return console.getIPAddress();
+        }
+
+        @Override
+        public void setConnectTimeout(int ms) {
+            console.setConnectTimeout(ms);
+        }
+
+        @Override
+        public void setConversationTimeout(int ms) {
+            console.setConversationTimeout(ms);
+        }
+
+        @Override
+        public int getConnectTimeout() {
+            return console.getConnectTimeout();
+        }
+
+        @Override
+        public int getConversationTimeout() {
+            return console.getConversationTimeout();
+        }
+
+        @Override
+        public JRPC.IXboxDebugTarget getDebugTarget() {
+            return debugTarget;
+        }
+
+        @Override
+        public long OpenConnection(String flagsOrNull) {
+            long[] id = new long[1];
+            run(priority, () -> id[0] = console.OpenConnection(flagsOrNull));
+            return id[0];
+        }
+
+        @Override
+        public void SendTextCommand(long connectionId, String command, String[] outResponse) {
+            run(priority, () -> console.SendTextCommand(connectionId, command, outResponse));
+        }
+
+        private final class ViewDebugTarget implements JRPC.IXboxDebugTarget {
+            @Override
+            public void GetMemory(long address, long length, byte[] outBuf, long[] outRead) {
+                int total = (int) Math.min(length, outBuf.length);
+                if (total <= chunkSize) {
+                    run(priority, () -> console.getDebugTarget().GetMemory(address, length, outBuf, outRead));
+                    return;
+                }
+                //chunks execute one at a time on the dispatcher, so they can share one scratch buffer;
+                //once a chunk throws or comes back short, the remaining chunks of the transfer are skipped,
+                //so the count reported is always a contiguous prefix, as it is for an unchunked read
+                byte[] chunk = new byte[chunkSize];
+                long[] read = new long[1];
+                long[] got = new long[1];
+                boolean[] failed = new boolean[1];
+                boolean[] done = new boolean[1];
+                List<Runnable> parts = new ArrayList<>();
+                for (int off = 0; off < total; off += chunkSize) {
+                    final int o = off, n = Math.min(chunkSize, total - off);
+                    parts.add(() -> {
+                        if (failed[0] || done[0]) return;
+                        failed[0] = true;
+                        read[0] = 0;
+                        console.getDebugTarget().GetMemory(address + o, n, chunk, read);
+                        int r = (int) Math.min(read[0], n);
+                        System.arraycopy(chunk, 0, outBuf, o, r);
+                        got[0] += r;
+                        done[0] = r < n;
+                        failed[0] = false;
+                    });
+                }
+                run(priority, parts);
+                if (outRead != null && outRead.length > 0) outRead[0] = got[0];
+            }
+
+            @Override
+            public void InvalidateMemoryCache(boolean unused, long address, long length) {
+                console.getDebugTarget().InvalidateMemoryCache(unused, address, length);
+            }
+
+            @Override
+            public void SetMemory(long address, long length, byte[] data, long[] outWritten) {
+                int total = (int) Math.min(length, data.length);
+                if (total <= chunkSize) {
+                    run(priority, () -> console.getDebugTarget().SetMemory(address, length, data, outWritten));
+                    return;
+                }
+                long[] written = new long[1];
+                long[] put = new long[1];
+                boolean[] failed = new boolean[1];
+                boolean[] done = new boolean[1];
+                List<Runnable> parts = new ArrayList<>();
+                for (int off = 0; off < total; off += chunkSize) {
+                    final int o = off, n = Math.min(chunkSize, total - off);
+                    parts.add(() -> {
+                        if (failed[0] || done[0]) return;
+                        failed[0] = true;
+                        written[0] = 0;
+                        byte[] chunk = new byte[n];
+                        System.arraycopy(data, o, chunk, 0, n);
+                        console.getDebugTarget().SetMemory(address + o, n, chunk, written);
+                        int w = (int) Math.min(written[0], n);
+                        put[0] += w;
+                        done[0] = w < n;
+                        failed[0] = false;
+                    });
+                }
+                run(priority, parts);
+                if (outWritten != null && outWritten.length > 0) outWritten[0] = put[0];
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.jjrpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**Maps console structs onto annotated Java records or classes. A struct is read with one getmem of its size,
+ * an array of structs with one getmem of the whole span, and a bound struct writes back only the bytes that changed.
+ * <pre>
+ * record Player(@Offset(0x10) float health, @Offset(0x14) int ammo, @Offset(0x20) @Size(16) String name) {}
+ * Player p = StructMapper.read(console, 0x82001000L, Player.class);
+ * </pre>
+ * Fields are big-endian unless the field or its type is marked {@link LittleEndian}. Supported field types are the
+ * primitives, byte[] and String (with {@link Size} in bytes), other primitive arrays (with {@link Size} in elements)
+ * and nested structs. A mapped class needs a no-argument constructor and non-final mapped fields (use a record for an
+ * immutable struct); a struct type cannot contain itself.*/
+public final class StructMapper {
+
+    /**Byte offset of the field from the start of the struct.*/
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.FIELD, ElementType.RECORD_COMPONENT})
+    public @interface Offset {
+        int value();
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.FIELD, ElementType.RECORD_COMPONENT, ElementType.TYPE})
+    public @interface BigEndian {}
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.FIELD, ElementType.RECORD_COMPONENT, ElementType.TYPE})
+    public @interface LittleEndian {}
+
+    /**On a type: the struct size, when it is larger than its last mapped field.
+     * On a field: byte length of a byte[] or String, element count of other arrays.*/
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.FIELD, ElementType.RECORD_COMPONENT, ElementType.TYPE})
+    public @interface Size {
+        int value();
+    }
+
+    private interface Getter {
+        Object get(ByteBuffer b, int at);
+    }
+
+    private interface Putter {
+        void put(ByteBuffer b, int at, Object v);
+    }
+
+    private record Codec(Getter getter, Putter putter) {
+        Object get(ByteBuffer b, int at) {
+            return getter.get(b, at);
+        }
+
+        void put(ByteBuffer b, int at, Object v) {
+            putter.put(b, at, v);
+        }
+    }
+
+    //dense: encoding writes every byte of the member's width
+    private record Member(String name, int offset, int width, boolean dense, ByteOrder order, Codec codec, MethodHandle getter, MethodHandle setter) {}
+
+    /**Bound accessors and size of a mapped type.*/
+    public static final class Layout<T> {
+        private final Class<T> type;
+        private final int size;
+        private final Member[] members;
+        private final MethodHandle constructor;
+        private final boolean record;
+        //record component index of each member, or -1
+        private final int[] slots;
+        private final Object[] defaults;
+        //encode() writes every byte of the struct, so nothing has to be read back before writing it whole
+        private final boolean dense;
+
+        private Layout(Class<T> type) {
+            this.type = type;
+            this.record = type.isRecord();
+            ByteOrder order = orderOf(type, ByteOrder.BIG_ENDIAN);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            List<Member> list = new ArrayList<>();
+            List<Integer> slotList = new ArrayList<>();
+            try {
+                if (record) {
+                    RecordComponent[] rc = type.getRecordComponents();
+                    Class<?>[] types = new Class<?>[rc.length];
+                    defaults = new Object[rc.length];
+                    for (int i = 0; i < rc.length; i++) {
+                        types[i] = rc[i].getType();
+                        defaults[i] = defaultValue(types[i]);
+                        Offset off = rc[i].getAnnotation(Offset.class);
+                        if (off == null) continue;
+                        Method accessor = rc[i].getAccessor();
+                        accessor.setAccessible(true);
+                        list.add(member(rc[i].getName(), rc[i].getType(), off.value(), orderOf(rc[i], order), rc[i].getAnnotation(Size.class),
+                                lookup.unreflect(accessor), null));
+                        slotList.add(i);
+                    }
+                    Constructor<T> ctor = type.getDeclaredConstructor(types);
+                    ctor.setAccessible(true);
+                    constructor = lookup.unreflectConstructor(ctor);
+                } else {
+                    defaults = new Object[0];
+                    for (Class<?> k = type; k != null && k != Object.class; k = k.getSuperclass()) {
+                        for (Field f : k.getDeclaredFields()) {
+                            Offset off = f.getAnnotation(Offset.class);
+                            if (off == null || Modifier.isStatic(f.getModifiers())) continue;
+                            if (Modifier.isFinal(f.getModifiers()))
+                                throw new IllegalArgumentException("Cannot map " + type.getName() + ": field " + f.getName() + " is final");
+                            f.setAccessible(true);
+                            list.add(member(f.getName(), f.getType(), off.value(), orderOf(f, order), f.getAnnotation(Size.class),
+                                    lookup.unreflectGetter(f), lookup.unreflectSetter(f)));
+                            slotList.add(-1);
+                        }
+                    }
+                    Constructor<T> ctor = type.getDeclaredConstructor();
+                    ctor.setAccessible(true);
+                    constructor = lookup.unreflectConstructor(ctor);
+                }
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot map " + type.getName() + ": " + e.getMessage(), e);
+            }
+            members = list.toArray(new Member[0]);
+            slots = slotList.stream().mapToInt(Integer::intValue).toArray();
+            int end = 0;
+            for (Member m : members) end = Math.max(end, m.offset + m.width);
+            Size s = type.getAnnotation(Size.class);
+            size = s != null ? Math.max(s.value(), end) : end;
+            //members may overlap (unions), so a gap is a byte past the furthest end covered so far
+            Member[] byOffset = members.clone();
+            Arrays.sort(byOffset, (a, b) -> Integer.compare(a.offset, b.offset));
+            boolean covered = true;
+            int reached = 0;
+            for (Member m : byOffset) {
+                if (m.offset > reached || !m.dense) covered = false;
+                reached = Math.max(reached, m.offset + m.width);
+            }
+            dense = covered && reached == size;
+        }
+
+        public Class<T> type() {
+            return type;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public T decode(byte[] buf, int offset) {
+            ByteBuffer b = ByteBuffer.wrap(buf);
+            try {
+                if (record) {
+                    Object[] args = defaults.clone();
+                    for (int i = 0; i < members.length; i++) {
+                        Member m = members[i];
+                        args[slots[i]] = m.codec.get(b.order(m.order), offset + m.offset);
+                    }
+                    return type.cast(constructor.invokeWithArguments(args));
+                }
+                T value = type.cast(constructor.invoke());
+                for (Member m : members) m.setter.invoke(value, m.codec.get(b.order(m.order), offset + m.offset));
+                return value;
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }
+
+        /**Writes the mapped fields of value over buf; bytes between fields keep what buf already holds.*/
+        public void encode(T value, byte[] buf, int offset) {
+            ByteBuffer b = ByteBuffer.wrap(buf);
+            try {
+                for (Member m : members) m.codec.put(b.order(m.order), offset + m.offset, m.getter.invoke(value));
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    /**A struct tied to its console address. Changes made through set() or to a mutable instance are written by write(),
+     * which sends only the span between the first and last changed byte.*/
+    public static final class Bound<T> {
+        private final JRPC.IXboxConsole console;
+        private final long address;
+        private final Layout<T> layout;
+        private final byte[] clean;
+        private T value;
+
+        private Bound(JRPC.IXboxConsole console, long address, Layout<T> layout) {
+            this.console = console;
+            this.address = address;
+            this.layout = layout;
+            this.clean = new byte[layout.size()];
+            refresh();
+        }
+
+        public long address() {
+            return address;
+        }
+
+        public synchronized T get() {
+            return value;
+        }
+
+        public synchronized void set(T value) {
+            this.value = value;
+        }
+
+        /**Rereads the struct, discarding unwritten changes.*/
+        public synchronized T refresh() {
+            fetch(console, address, clean);
+            value = layout.decode(clean, 0);
+            return value;
+        }
+
+        /**@return false when nothing changed since the last read or write*/
+        public synchronized boolean write() {
+            byte[] dirty = clean.clone();
+            layout.encode(value, dirty, 0);
+            int first = 0, last = dirty.length - 1;
+            while (first < dirty.length && dirty[first] == clean[first]) first++;
+            if (first == dirty.length) return false;
+            while (dirty[last] == clean[last]) last--;
+            store(console, address + first, Arrays.copyOfRange(dirty, first, last + 1));
+            System.arraycopy(dirty, first, clean, first, last - first + 1);
+            return true;
+        }
+    }
+
+    //types whose layout is being built on this thread, to catch a struct that contains itself
+    private static final ThreadLocal<List<Class<?>>> building = ThreadLocal.withInitial(ArrayList::new);
+
+    private static final ClassValue<Layout<?>> layouts = new ClassValue<>() {
+        @Override
+        protected Layout<?> computeValue(Class<?> type) {
+            List<Class<?>> path = building.get();
+            if (path.contains(type)) {
+                List<Class<?>> cycle = new ArrayList<>(path.subList(path.indexOf(type), path.size()));
+                cycle.add(type);
+                throw new IllegalArgumentException("Struct type " + type.getName() + " contains itself: "
+                        + cycle.stream().map(Class::getSimpleName).reduce((a, b) -> a + " -> " + b).orElse(""));
+            }
+            path.add(type);
+            try {
+                return new Layout<>(type);
+            } finally {
+                path.remove(path.size() - 1);
+            }
+        }
+    };
+
+    private StructMapper() {}
+
+    @SuppressWarnings("unchecked")
+    public static <T> Layout<T> layout(Class<T> type) {
+        return (Layout<T>) layouts.get(type);
+    }
+
+    public static <T> T read(JRPC.IXboxConsole c, long address, Class<T> type) {
+        Layout<T> l = layout(type);
+        byte[] buf = new byte[l.size()];
+        fetch(c, address, buf);
+        return l.decode(buf, 0);
+    }
+
+    public static <T> List<T> readArray(JRPC.IXboxConsole c, long address, int count, Class<T> type) {
+        return readArray(c, address, count, layout(type).size(), type);
+    }
+
+    /**Reads count structs spaced stride bytes apart with a single getmem.*/
+    public static <T> List<T> readArray(JRPC.IXboxConsole c, long address, int count, int stride, Class<T> type) {
+        Layout<T> l = layout(type);
+        if (count <= 0) return new ArrayList<>();
+        byte[] buf = new byte[stride * (count - 1) + l.size()];
+        fetch(c, address, buf);
+        List<T> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) out.add(l.decode(buf, i * stride));
+        return out;
+    }
+
+    /**Writes every mapped field. Bytes between fields are reread first so they are sent back unchanged.*/
+    public static <T> void write(JRPC.IXboxConsole c, long address, T value) {
+        @SuppressWarnings("unchecked")
+        Layout<T> l = layout((Class<T>) value.getClass());
+        byte[] buf = new byte[l.size()];
+        if (!l.dense) fetch(c, address, buf);
+        l.encode(value, buf, 0);
+        store(c, address, buf);
+    }
+
+    public static <T> Bound<T> bind(JRPC.IXboxConsole c, long address, Class<T> type) {
+        return new Bound<>(c, address, layout(type));
+    }
+
+    private static void fetch(JRPC.IXboxConsole c, long address, byte[] buf) {
+        long[] read = new long[1];
+        c.DebugTarget().GetMemory(address, buf.length, buf, read);
+        if (read[0] < buf.length)
+            throw new JRPC.ComException(0x82DA0007, "Short read at 0x" + Long.toHexString(address) + ": " + read[0] + " of " + buf.length);
+    }
+
+    private static void store(JRPC.IXboxConsole c, long address, byte[] data) {
+        long[] written = new long[1];
+        c.DebugTarget().SetMemory(address, data.length, data, written);
+    }
+
+    private static ByteOrder orderOf(AnnotatedElement e, ByteOrder def) {
+        if (e.isAnnotationPresent(LittleEndian.class)) return ByteOrder.LITTLE_ENDIAN;
+        if (e.isAnnotationPresent(BigEndian.class)) return ByteOrder.BIG_ENDIAN;
+        return def;
+    }
+
+    private static Member member(String name, Class<?> t, int offset, ByteOrder order, Size size, MethodHandle getter, MethodHandle setter) {
+        int n = size != null ? size.value() : -1;
+        Codec codec;
+        int width;
+        boolean dense = true;
+        if (t == byte.class) {
+            width = 1;
+            codec = new Codec((b, at) -> b.get(at), (b, at, v) -> b.put(at, (Byte) v));
+        } else if (t == boolean.class) {
+            width = 1;
+            codec = new Codec((b, at) -> b.get(at) != 0, (b, at, v) -> b.put(at, (byte) ((Boolean) v ? 1 : 0)));
+        } else if (t == short.class) {
+            width = 2;
+            codec = new Codec((b, at) -> b.getShort(at), (b, at, v) -> b.putShort(at, (Short) v));
+        } else if (t == char.class) {
+            width = 2;
+            codec = new Codec((b, at) -> b.getChar(at), (b, at, v) -> b.putChar(at, (Character) v));
+        } else if (t == int.class) {
+            width = 4;
+            codec = new Codec((b, at) -> b.getInt(at), (b, at, v) -> b.putInt(at, (Integer) v));
+        } else if (t == long.class) {
+            width = 8;
+            codec = new Codec((b, at) -> b.getLong(at), (b, at, v) -> b.putLong(at, (Long) v));
+        } else if (t == float.class) {
+            width = 4;
+            codec = new Codec((b, at) -> b.getFloat(at), (b, at, v) -> b.putFloat(at, (Float) v));
+        } else if (t == double.class) {
+            width = 8;
+            codec = new Codec((b, at) -> b.getDouble(at), (b, at, v) -> b.putDouble(at, (Double) v));
+        } else if (t == String.class) {
+            width = requireSize(name, n);
+            codec = new Codec((b, at) -> {
+                int len = 0;
+                while (len < n && b.get(at + len) != 0) len++;
+                byte[] s = new byte[len];
+                b.get(at, s);
+                return new String(s, StandardCharsets.US_ASCII);
+            }, (b, at, v) -> {
+                byte[] s = v == null ? new byte[0] : ((String) v).getBytes(StandardCharsets.US_ASCII);
+                byte[] field = new byte[n];
+                System.arraycopy(s, 0, field, 0, Math.min(s.length, n));
+                b.put(at, field);
+            });
+        } else if (t.isArray() && t.getComponentType().isPrimitive()) {
+            Member element = member(name, t.getComponentType(), 0, order, null, null, null);
+            int count = requireSize(name, n);
+            width = element.width * count;
+            Class<?> ct = t.getComponentType();
+            codec = new Codec((b, at) -> {
+                Object arr = Array.newInstance(ct, count);
+                for (int i = 0; i < count; i++) Array.set(arr, i, element.codec.get(b, at + i * element.width));
+                return arr;
+            }, (b, at, v) -> {
+                //like a String, a null or short array is padded with zeros
+                int have = v == null ? 0 : Math.min(count, Array.getLength(v));
+                for (int i = 0; i < have; i++) element.codec.put(b, at + i * element.width, Array.get(v, i));
+                for (int i = have * element.width; i < count * element.width; i++) b.put(at + i, (byte) 0);
+            });
+        } else if (!t.isPrimitive() && !t.isArray() && !t.isInterface()) {
+            Layout<?> nested = layout(t);
+            if (nested.members.length == 0) throw new IllegalArgumentException("Field " + name + " has no mapped fields in " + t.getName());
+            width = nested.size();
+            dense = nested.dense;
+            codec = new Codec((b, at) -> nested.decode(b.array(), at), (b, at, v) -> {
+                if (v != null) encodeNested(nested, v, b.array(), at);
+                else Arrays.fill(b.array(), at, at + nested.size(), (byte) 0);
+            });
+        } else {
+            throw new IllegalArgumentException("Unsupported struct field type " + t.getName() + " for " + name);
+        }
+        return new Member(name, offset, width, dense, order, codec, getter, setter);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void encodeNested(Layout<T> layout, Object value, byte[] buf, int at) {
+        layout.encode((T) value, buf, at);
+    }
+
+    private static Object defaultValue(Class<?> t) {
+        return t.isPrimitive() ? Array.get(Array.newInstance(t, 1), 0) : null;
+    }
+
+    private static int requireSize(String name, int n) {
+        if (n <= 0) throw new IllegalArgumentException("Field " + name + " needs @Size");
+        return n;
+    }
+}
@@ -0,0 +1,406 @@
+package com.jjrpc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**Samples memory values, console temperatures or any other source at fixed rates into fixed-size ring buffers.
+ * Every series keeps its raw samples plus coarser tiers, where each tier bucket holds the mean, min and max of
+ * factor buckets of the tier below, so long runs keep a bounded footprint. Rings live in heap buffers or, when a
+ * directory is given, in memory-mapped files that are picked up again after a restart.*/
+public final class TelemetryRecorder implements Closeable {
+
+    public enum ValueType {
+        INT8(1), UINT8(1), INT16(2), UINT16(2), INT32(4), UINT32(4), INT64(8), FLOAT(4), DOUBLE(8);
+
+        private final int width;
+
+        ValueType(int width) {
+            this.width = width;
+        }
+
+        double decode(byte[] b, int at) {
+            ByteBuffer buf = ByteBuffer.wrap(b);
+            return switch (this) {
+                case INT8 -> b[at];
+                case UINT8 -> b[at] & 0xFF;
+                case INT16 -> buf.getShort(at);
+                case UINT16 -> buf.getShort(at) & 0xFFFF;
+                case INT32 -> buf.getInt(at);
+                case UINT32 -> buf.getInt(at) & 0xFFFFFFFFL;
+                case INT64 -> buf.getLong(at);
+                case FLOAT -> buf.getFloat(at);
+                case DOUBLE -> buf.getDouble(at);
+            };
+        }
+    }
+
+    /**Samples of one series between two times. For raw samples min and max equal values.*/
+    public record Range(long[] times, double[] values, double[] min, double[] max) {
+        public int size() {
+            return times.length;
+        }
+    }
+
+    private static final int RING_MAGIC = 0x4A4A5452; // "JJTR"
+    private static final int RING_HEADER = 24;
+
+    //samples of one tier in a buffer: header (magic, fields, capacity, pad, count) then records of time + fields doubles
+    private static final class Ring {
+        final ByteBuffer buf;
+        final int fields;
+        final int capacity;
+        final int record;
+
+        Ring(ByteBuffer buf, int fields, int capacity) {
+            this.buf = buf;
+            this.fields = fields;
+            this.capacity = capacity;
+            this.record = 8 + 8 * fields;
+            if (buf.getInt(0) != RING_MAGIC || buf.getInt(4) != fields || buf.getInt(8) != capacity) {
+                buf.putInt(0, RING_MAGIC).putInt(4, fields).putInt(8, capacity).putLong(16, 0);
+            }
+        }
+
+        static int bytes(int fields, int capacity) {
+            return RING_HEADER + capacity * (8 + 8 * fields);
+        }
+
+        long count() {
+            return buf.getLong(16);
+        }
+
+        void append(long time, double a, double min, double max) {
+            long n = count();
+            int at = RING_HEADER + (int) (n % capacity) * record;
+            buf.putLong(at, time).putDouble(at + 8, a);
+            if (fields == 3) buf.putDouble(at + 16, min).putDouble(at + 24, max);
+            buf.putLong(16, n + 1);
+        }
+
+        long first() {
+            return Math.max(0, count() - capacity);
+        }
+
+        long time(long i) {
+            return buf.getLong(RING_HEADER + (int) (i % capacity) * record);
+        }
+
+        double field(long i, int f) {
+            return buf.getDouble(RING_HEADER + (int) (i % capacity) * record + 8 + 8 * Math.min(f, fields - 1));
+        }
+
+        //first sample index with time >= t
+        long lowerBound(long t) {
+            long lo = first(), hi = count();
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (time(mid) < t) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private static final class Series {
+        final String name;
+        final Ring[] tiers;
+        final int[] factors;
+        //partial bucket of each coarse tier: sum, min, max, samples, first time
+        final double[] sum, min, max;
+        final int[] samples;
+        final long[] start;
+        final ByteBuffer storage;
+        final FileChannel file;
+
+        Series(String name, ByteBuffer storage, FileChannel file, int capacity, int[] factors) {
+            this.name = name;
+            this.storage = storage;
+            this.file = file;
+            this.factors = factors;
+            tiers = new Ring[factors.length + 1];
+            int at = 0;
+            for (int t = 0; t < tiers.length; t++) {
+                int fields = t == 0 ? 1 : 3, size = Ring.bytes(fields, capacity);
+                tiers[t] = new Ring(storage.slice(at, size), fields, capacity);
+                at += size;
+            }
+            sum = new double[tiers.length];
+            min = new double[tiers.length];
+            max = new double[tiers.length];
+            samples = new int[tiers.length];
+            start = new long[tiers.length];
+        }
+
+        synchronized void add(long time, double v) {
+            tiers[0].append(time, v, v, v);
+            roll(1, time, v, v, v);
+        }
+
+        private void roll(int t, long time, double mean, double lo, double hi) {
+            if (t >= tiers.length) return;
+            if (samples[t] == 0) {
+                start[t] = time;
+                min[t] = lo;
+                max[t] = hi;
+                sum[t] = 0;
+            }
+            sum[t] += mean;
+            min[t] = Math.min(min[t], lo);
+            max[t] = Math.max(max[t], hi);
+            if (++samples[t] < factors[t - 1]) return;
+            double m = sum[t] / samples[t];
+            samples[t] = 0;
+            tiers[t].append(start[t], m, min[t], max[t]);
+            roll(t + 1, start[t], m, min[t], max[t]);
+        }
+
+        //closes the partial bucket of every coarse tier, finest first so each one folds into the tier above
+        synchronized void flush() {
+            for (int t = 1; t < tiers.length; t++) {
+                if (samples[t] == 0) continue;
+                double m = sum[t] / samples[t];
+                samples[t] = 0;
+                tiers[t].append(start[t], m, min[t], max[t]);
+                roll(t + 1, start[t], m, min[t], max[t]);
+            }
+        }
+
+        synchronized Range query(int tier, long from, long to) {
+            Ring r = tiers[tier];
+            long a = r.lowerBound(from), b = r.lowerBound(to);
+            int n = (int) (b - a);
+            long[] times = new long[n];
+            double[] values = new double[n], lo = new double[n], hi = new double[n];
+            for (int i = 0; i < n; i++) {
+                times[i] = r.time(a + i);
+                values[i] = r.field(a + i, 0);
+                lo[i] = r.field(a + i, 1);
+                hi[i] = r.field(a + i, 2);
+            }
+            return new Range(times, values, lo, hi);
+        }
+
+        //finest tier whose oldest sample is not newer than from, otherwise the one reaching back furthest
+        synchronized int tierFor(long from) {
+            int best = 0;
+            long oldest = Long.MAX_VALUE;
+            for (int t = 0; t < tiers.length; t++) {
+                Ring r = tiers[t];
+                if (r.count() == 0) continue;
+                long first = r.time(r.first());
+                if (first <= from) return t;
+                if (first < oldest) {
+                    oldest = first;
+                    best = t;
+                }
+            }
+            return best;
+        }
+    }
+
+    private record Probe(Series series, long address, ValueType type) {}
+
+    private final JRPC.IXboxConsole console;
+    private final Path directory;
+    private final int capacity;
+    private final int[] factors;
+    private final Map<String, Series> series = new LinkedHashMap<>();
+    private final Map<Long, List<Probe>> probes = new HashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jjrpc-telemetry");
+        t.setDaemon(true);
+        return t;
+    });
+    //series whose latest sample failed
+    private final Map<String, RuntimeException> errors = new ConcurrentHashMap<>();
+    private volatile RuntimeException lastError;
+
+    /**Heap rings of 86400 samples per tier, with tiers of 1 minute and 1 hour buckets at 1 Hz.*/
+    public TelemetryRecorder(JRPC.IXboxConsole console) {
+        this(console, null, 86_400, 60, 60);
+    }
+
+    /**@param directory where each series is kept as a mapped file, or null to keep rings on the heap
+     * @param capacity samples per tier
+     * @param factors buckets of the tier below folded into one bucket of each coarser tier*/
+    public TelemetryRecorder(JRPC.IXboxConsole console, Path directory, int capacity, int... factors) {
+        this.console = console;
+        this.directory = directory;
+        this.capacity = capacity;
+        this.factors = factors.clone();
+    }
+
+    /**Reads the value at address every periodMillis. Addresses sharing a period are fetched together in merged getmem ranges.*/
+    public synchronized void addAddress(String name, long address, ValueType type, long periodMillis) {
+        Series s = create(name);
+        List<Probe> group = probes.get(periodMillis);
+        if (group == null) {
+            List<Probe> created = new ArrayList<>();
+            probes.put(periodMillis, created);
+            schedule(periodMillis, () -> sampleMemory(created));
+            group = created;
+        }
+        synchronized (group) {
+            group.add(new Probe(s, address, type));
+        }
+    }
+
+    /**Samples all four temperature sensors as temp.cpu, temp.gpu, temp.edram and temp.motherboard.*/
+    public synchronized void addTemperatures(long periodMillis) {
+        for (JRPC.TemperatureType t : JRPC.TemperatureType.values()) {
+            addSource("temp." + t.name().toLowerCase(Locale.ROOT), periodMillis, () -> JRPC.GetTemperature(console, t));
+        }
+    }
+
+    public synchronized void addSource(String name, long periodMillis, DoubleSupplier source) {
+        Series s = create(name);
+        schedule(periodMillis, () -> {
+            try {
+                s.add(System.currentTimeMillis(), source.getAsDouble());
+                errors.remove(name);
+            } catch (RuntimeException e) {
+                failed(name, e);
+            }
+        });
+    }
+
+    public synchronized Set<String> names() {
+        return new LinkedHashSet<>(series.keySet());
+    }
+
+    /**Samples in [fromMillis, toMillis) from the finest tier that reaches back to fromMillis.*/
+    public Range query(String name, long fromMillis, long toMillis) {
+        Series s = get(name);
+        return s.query(s.tierFor(fromMillis), fromMillis, toMillis);
+    }
+
+    /**@param tier 0 for raw samples, 1 and up for the downsampled tiers*/
+    public Range query(String name, int tier, long fromMillis, long toMillis) {
+        return get(name).query(tier, fromMillis, toMillis);
+    }
+
+    /**The most recent sampling failure of any series, or null if none has failed. A later success does not clear it.*/
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+
+    /**Why the latest sample of a series failed, or null when it succeeded.*/
+    public RuntimeException getError(String name) {
+        return errors.get(name);
+    }
+
+    /**The series whose latest sample failed, with the failure.*/
+    public Map<String, RuntimeException> getErrors() {
+        return new TreeMap<>(errors);
+    }
+
+    private void failed(String name, RuntimeException e) {
+        errors.put(name, e);
+        lastError = e;
+    }
+
+    private synchronized Series get(String name) {
+        Series s = series.get(name);
+        if (s == null) throw new IllegalArgumentException("No series " + name);
+        return s;
+    }
+
+    private Series create(String name) {
+        if (series.containsKey(name)) throw new IllegalArgumentException("Series " + name + " already exists");
+        int size = 0;
+        for (int t = 0; t <= factors.length; t++) size += Ring.bytes(t == 0 ? 1 : 3, capacity);
+        Series s;
+        if (directory == null) {
+            s = new Series(name, ByteBuffer.allocate(size), null, capacity, factors);
+        } else {
+            try {
+                Files.createDirectories(directory);
+                FileChannel ch = FileChannel.open(directory.resolve(name + ".ring"),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                s = new Series(name, map, ch, capacity, factors);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        series.put(name, s);
+        return s;
+    }
+
+    //samplers record their own failures per series; this only keeps an unexpected one from cancelling the schedule
+    private void schedule(long periodMillis, Runnable sample) {
+        timer.scheduleAtFixedRate(() -> {
+            try {
+                sample.run();
+            } catch (RuntimeException e) {
+                lastError = e;
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sampleMemory(List<Probe> group) {
+        List<Probe> list;
+        synchronized (group) {
+            list = new ArrayList<>(group);
+        }
+        list.sort(Comparator.comparingLong(Probe::address));
+        List<MemoryRange> wanted = new ArrayList<>(list.size());
+        for (Probe p : list) wanted.add(new MemoryRange(p.address(), p.type().width));
+        long now = System.currentTimeMillis();
+        long[] read = new long[1];
+        int next = 0;
+        for (MemoryRange r : MemoryRange.coalesce(wanted, 64, 64 * 1024)) {
+            byte[] buf = new byte[r.length()];
+            read[0] = 0;
+            RuntimeException error = null;
+            try {
+                console.DebugTarget().GetMemory(r.address(), r.length(), buf, read);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            //a failed range only fails the series inside it; the other ranges are still read
+            for (; next < list.size() && r.contains(list.get(next).address(), list.get(next).type().width); next++) {
+                Probe p = list.get(next);
+                String name = p.series().name;
+                int off = (int) (p.address() - r.address());
+                if (error != null) {
+                    failed(name, error);
+                } else if (off + p.type().width <= read[0]) {
+                    p.series().add(now, p.type().decode(buf, off));
+                    errors.remove(name);
+                } else {
+                    failed(name, new JRPC.ComException(0x82DA0007, "Short read at 0x" + Long.toHexString(p.address())));
+                }
+            }
+        }
+    }
+
+    /**Stops sampling, closes the partly filled coarse buckets and flushes mapped series to disk.*/
+    @Override
+    public synchronized void close() {
+        timer.shutdownNow();
+        for (Series s : series.values()) {
+            s.flush();
+            if (s.file == null) continue;
+            synchronized (s) {
+                if (s.storage instanceof MappedByteBuffer m) m.force();
+            }
+            try {
+                s.file.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
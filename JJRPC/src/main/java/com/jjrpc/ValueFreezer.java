@@ -0,0 +1,233 @@
+package com.jjrpc;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**Keeps values locked from this side of the link, replacing one constantMemorySet command per address.
+ * Each tick reads back only the addresses whose entry has a condition, in merged getmem ranges, and writes all
+ * due values with one setmem per contiguous run.*/
+public final class ValueFreezer implements Closeable {
+
+    public enum Type {
+        BYTE(1), INT16(2), INT32(4), INT64(8), FLOAT(4), DOUBLE(8), BYTES(0);
+
+        private final int width;
+
+        Type(int width) {
+            this.width = width;
+        }
+
+        byte[] encode(Number v) {
+            ByteBuffer b = ByteBuffer.allocate(width);
+            switch (this) {
+                case BYTE -> b.put(v.byteValue());
+                case INT16 -> b.putShort(v.shortValue());
+                case INT32 -> b.putInt(v.intValue());
+                case INT64 -> b.putLong(v.longValue());
+                case FLOAT -> b.putFloat(v.floatValue());
+                case DOUBLE -> b.putDouble(v.doubleValue());
+                case BYTES -> throw new IllegalArgumentException("Use addBytes for raw values");
+            }
+            return b.array();
+        }
+    }
+
+    /**@param ifValue when not null the value is only written while the address currently holds these bytes
+     * @param titleId when not 0 the value is only written while this title is running*/
+    public record Entry(int id, long address, Type type, byte[] value, byte[] ifValue, long titleId) {
+        public boolean conditional() {
+            return ifValue != null;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + id + " 0x" + Long.toHexString(address) + " " + type + " " + HexFormat.of().formatHex(value)
+                    + (ifValue != null ? " if " + HexFormat.of().formatHex(ifValue) : "")
+                    + (titleId != 0 ? " title 0x" + Long.toHexString(titleId) : "");
+        }
+    }
+
+    private static final int READ_GAP = 64;
+    private static final int MAX_READ = 64 * 1024;
+
+    private final JRPC.IXboxConsole console;
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jjrpc-freezer");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> task;
+    private final AtomicLong ticks = new AtomicLong();
+    private volatile RuntimeException lastError;
+
+    public ValueFreezer(JRPC.IXboxConsole console) {
+        this.console = console;
+    }
+
+    public int add(long address, Type type, Number value) {
+        return add(address, type, value, null, 0);
+    }
+
+    /**@param ifValue write only while the address holds this value, or null to always write*/
+    public int add(long address, Type type, Number value, Number ifValue, long titleId) {
+        return put(address, type, type.encode(value), ifValue == null ? null : type.encode(ifValue), titleId);
+    }
+
+    public int addBytes(long address, byte[] value) {
+        return addBytes(address, value, null, 0);
+    }
+
+    public int addBytes(long address, byte[] value, byte[] ifValue, long titleId) {
+        if (ifValue != null && ifValue.length != value.length) throw new IllegalArgumentException("Condition and value lengths differ");
+        return put(address, Type.BYTES, value.clone(), ifValue == null ? null : ifValue.clone(), titleId);
+    }
+
+    private int put(long address, Type type, byte[] value, byte[] ifValue, long titleId) {
+        int id = ids.incrementAndGet();
+        synchronized (entries) {
+            entries.put(id, new Entry(id, address, type, value, ifValue, titleId));
+        }
+        return id;
+    }
+
+    public boolean remove(int id) {
+        synchronized (entries) {
+            return entries.remove(id) != null;
+        }
+    }
+
+    /**Removes every entry covering address.*/
+    public int removeAt(long address) {
+        synchronized (entries) {
+            int before = entries.size();
+            entries.values().removeIf(e -> address >= e.address() && address < e.address() + e.value().length);
+            return before - entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public List<Entry> list() {
+        synchronized (entries) {
+            return new ArrayList<>(entries.values());
+        }
+    }
+
+    /**Runs tick() every periodMillis on a background thread until stop() or close().*/
+    public synchronized void start(long periodMillis) {
+        stop();
+        task = timer.scheduleWithFixedDelay(() -> {
+            try {
+                tick();
+                lastError = null;
+            } catch (RuntimeException e) {
+                lastError = e;
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) task.cancel(false);
+        task = null;
+    }
+
+    public long getTicks() {
+        return ticks.get();
+    }
+
+    /**Failure of the most recent background tick, or null when it succeeded.*/
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+
+    /**One pass over the table.
+     * @return the number of setmem commands sent*/
+    public int tick() {
+        List<Entry> due = list();
+        ticks.incrementAndGet();
+        if (due.isEmpty()) return 0;
+        long title = 0;
+        for (Entry e : due) {
+            if (e.titleId() != 0) {
+                title = JRPC.XamGetCurrentTitleId(console);
+                break;
+            }
+        }
+        final long running = title;
+        due.removeIf(e -> e.titleId() != 0 && e.titleId() != running);
+        List<MemoryRange> checks = new ArrayList<>();
+        for (Entry e : due) if (e.conditional()) checks.add(new MemoryRange(e.address(), e.ifValue().length));
+        if (!checks.isEmpty()) {
+            TreeMap<Long, byte[]> current = read(checks);
+            due.removeIf(e -> e.conditional() && !matches(current, e));
+        }
+        return write(due);
+    }
+
+    //start address -> bytes of each merged range that was read completely
+    private TreeMap<Long, byte[]> read(List<MemoryRange> wanted) {
+        TreeMap<Long, byte[]> out = new TreeMap<>();
+        long[] read = new long[1];
+        for (MemoryRange r : MemoryRange.coalesce(wanted, READ_GAP, MAX_READ)) {
+            byte[] buf = new byte[r.length()];
+            read[0] = 0;
+            console.DebugTarget().GetMemory(r.address(), r.length(), buf, read);
+            if (read[0] == r.length()) out.put(r.address(), buf);
+        }
+        return out;
+    }
+
+    private static boolean matches(TreeMap<Long, byte[]> current, Entry e) {
+        Map.Entry<Long, byte[]> r = current.floorEntry(e.address());
+        int n = e.ifValue().length;
+        if (r == null || e.address() + n > r.getKey() + r.getValue().length) return false;
+        int off = (int) (e.address() - r.getKey());
+        return Arrays.equals(r.getValue(), off, off + n, e.ifValue(), 0, n);
+    }
+
+    //joins touching or overlapping entries into runs; where entries overlap the one added last wins
+    private int write(List<Entry> due) {
+        if (due.isEmpty()) return 0;
+        List<Entry> sorted = new ArrayList<>(due);
+        sorted.sort(Comparator.comparingLong(Entry::address));
+        int sent = 0;
+        int i = 0;
+        while (i < sorted.size()) {
+            long start = sorted.get(i).address();
+            long end = start + sorted.get(i).value().length;
+            int j = i + 1;
+            while (j < sorted.size() && sorted.get(j).address() <= end) {
+                end = Math.max(end, sorted.get(j).address() + sorted.get(j).value().length);
+                j++;
+            }
+            byte[] run = new byte[(int) (end - start)];
+            List<Entry> parts = new ArrayList<>(sorted.subList(i, j));
+            parts.sort(Comparator.comparingInt(Entry::id));
+            for (Entry e : parts) System.arraycopy(e.value(), 0, run, (int) (e.address() - start), e.value().length);
+            long[] written = new long[1];
+            console.DebugTarget().SetMemory(start, run.length, run, written);
+            sent++;
+            i = j;
+        }
+        return sent;
+    }
+
+    @Override
+    public void close() {
+        stop();
+        timer.shutdownNow();
+    }
+}
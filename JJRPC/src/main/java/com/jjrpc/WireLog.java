@@ -0,0 +1,156 @@
+package com.jjrpc;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**Binary log format shared by RecordingXboxConsole and ReplayXboxConsole.
+ * Header: magic, version, console IP. Each record: kind byte, varint nanos since the first record, payload.*/
+final class WireLog {
+    static final int MAGIC = 0x4A4A574C; // "JJWL"
+    static final int VERSION = 1;
+
+    static final int OPEN = 1;
+    static final int TEXT = 2;
+    static final int GETMEM = 3;
+    static final int SETMEM = 4;
+    static final int ERROR = 5;
+
+    private WireLog() {}
+
+    static final class Record {
+        final int kind;
+        final long nanos;
+        final String text;
+        final String response;
+        final long address;
+        final long length;
+        final byte[] data;
+
+        Record(int kind, long nanos, String text, String response, long address, long length, byte[] data) {
+            this.kind = kind;
+            this.nanos = nanos;
+            this.text = text;
+            this.response = response;
+            this.address = address;
+            this.length = length;
+            this.data = data;
+        }
+    }
+
+    static String openKey(String flags) {
+        return "open " + flags;
+    }
+
+    static String getmemKey(long address, long length) {
+        return "getmem 0x" + Long.toHexString(address) + " " + length;
+    }
+
+    static String setmemKey(long address, long length) {
+        return "setmem 0x" + Long.toHexString(address) + " " + length;
+    }
+
+    //the operation a record answers, used to check that a replay follows the recorded sequence
+    static String key(Record r) {
+        return switch (r.kind) {
+            case OPEN -> openKey(r.text);
+            case GETMEM -> getmemKey(r.address, r.length);
+            case SETMEM -> setmemKey(r.address, r.data == null ? 0 : r.data.length);
+            default -> r.text;
+        };
+    }
+
+    static void writeHeader(DataOutputStream out, long ip) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt((int) ip);
+    }
+
+    static long readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a wire log");
+        int v = in.readUnsignedByte();
+        if (v != VERSION) throw new IOException("Unsupported wire log version " + v);
+        return in.readInt() & 0xFFFFFFFFL;
+    }
+
+    static void write(DataOutputStream out, Record r) throws IOException {
+        out.writeByte(r.kind);
+        writeVarLong(out, r.nanos);
+        switch (r.kind) {
+            case OPEN, TEXT, ERROR -> {
+                writeString(out, r.text);
+                writeString(out, r.response);
+                writeVarLong(out, r.length);
+            }
+            case GETMEM, SETMEM -> {
+                writeVarLong(out, r.address);
+                writeVarLong(out, r.length);
+                writeBytes(out, r.data);
+            }
+            default -> throw new IOException("Bad record kind " + r.kind);
+        }
+    }
+
+    static Record read(DataInputStream in) throws IOException {
+        int kind = in.read();
+        if (kind < 0) return null;
+        long nanos = readVarLong(in);
+        return switch (kind) {
+            case OPEN, TEXT, ERROR -> {
+                String text = readString(in);
+                String response = readString(in);
+                yield new Record(kind, nanos, text, response, 0, readVarLong(in), null);
+            }
+            case GETMEM, SETMEM -> {
+                long address = readVarLong(in);
+                long length = readVarLong(in);
+                yield new Record(kind, nanos, null, null, address, length, readBytes(in));
+            }
+            default -> throw new IOException("Bad record kind " + kind);
+        };
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        writeBytes(out, s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = readBytes(in);
+        return b == null ? null : new String(b, StandardCharsets.UTF_8);
+    }
+
+    // length is stored +1 so that 0 means null
+    private static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+        if (b == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeVarLong(out, b.length + 1L);
+        out.write(b);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        long n = readVarLong(in);
+        if (n == 0) return null;
+        byte[] b = new byte[(int) (n - 1)];
+        in.readFully(b);
+        return b;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,82 @@
+package com.jjrpc;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**Creates IXboxConsole instances for one way of reaching a console. XboxManager opens consoles through the transport
+ * named by its Transport field. The built-in transports are:
+ * <ul>
+ * <li>"xbdm": JRPC.XbdmXboxConsole, binary-aware with keep-alive and retries (the default)</li>
+ * <li>"xdevkit": com.jjrpc.xdevkit.XbdmXboxConsole, hex-only</li>
+ * <li>"loopback": LoopbackXboxConsole, an in-process console with no socket</li>
+ * </ul>
+ * Further transports are found with ServiceLoader: list the implementing class in
+ * META-INF/services/com.jjrpc.XboxTransport. Implementations need a public no-argument constructor; one whose name
+ * matches a built-in replaces it.*/
+public interface XboxTransport {
+
+    String name();
+
+    JRPC.IXboxConsole open(String host, int port);
+
+    /**False for transports that do not go over the network, so XboxManager passes the host through without resolving it.*/
+    default boolean isNetwork() {
+        return true;
+    }
+
+    /**The transport registered under name, case-insensitively.*/
+    static XboxTransport forName(String name) {
+        XboxTransport t = Transports.all().get(name.toLowerCase(Locale.ROOT));
+        if (t == null) throw new IllegalArgumentException("No transport named '" + name + "', known: " + Transports.all().keySet());
+        return t;
+    }
+
+    static Set<String> names() {
+        return Transports.all().keySet();
+    }
+
+    static XboxTransport of(String name, boolean network, BiFunction<String, Integer, JRPC.IXboxConsole> open) {
+        return new XboxTransport() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public JRPC.IXboxConsole open(String host, int port) {
+                return open.apply(host, port);
+            }
+
+            @Override
+            public boolean isNetwork() {
+                return network;
+            }
+        };
+    }
+}
+
+//built-ins plus whatever ServiceLoader finds, loaded once
+final class Transports {
+
+    private static volatile Map<String, XboxTransport> all;
+
+    private Transports() {}
+
+    static Map<String, XboxTransport> all() {
+        Map<String, XboxTransport> m = all;
+        if (m != null) return m;
+        synchronized (Transports.class) {
+            if (all != null) return all;
+            m = new LinkedHashMap<>();
+            for (XboxTransport t : List.of(
+                    XboxTransport.of("xbdm", true, JRPC.XbdmXboxConsole::new),
+                    XboxTransport.of("xdevkit", true, com.jjrpc.xdevkit.XbdmXboxConsole::new),
+                    XboxTransport.of("loopback", false, (host, port) -> new LoopbackXboxConsole(host)))) {
+                m.put(t.name(), t);
+            }
+            for (XboxTransport t : ServiceLoader.load(XboxTransport.class)) m.put(t.name().toLowerCase(Locale.ROOT), t);
+            all = Collections.unmodifiableMap(m);
+            return all;
+        }
+    }
+}
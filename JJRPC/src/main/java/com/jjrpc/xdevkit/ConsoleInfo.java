@@ -0,0 +1,194 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.JRPC;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**Immutable snapshot of the identity and version details of a console: console ID, box ID, DM and kernel versions,
+ * console type and the systeminfo block. All of it is fetched in one round trip on consoles that support
+ * JRPC.IXboxRawConsole (every command is written before the first reply is read) and cached per console until the
+ * console reboots or the connection to it is re-established. Consoles that do not count their connections are
+ * refetched after CACHE_TTL_MILLIS; invalidate() forces a refetch at any time.
+ * A snapshot in which an XBDM command failed is returned but not cached, and an I/O error propagates as it did
+ * from the individual getters. The JRPC plugin values are left empty, or 0 for the kernel version, when the plugin
+ * does not answer.*/
+public final class ConsoleInfo {
+
+    private static final String[] COMMANDS = {
+            "getconsoleid",
+            "boxid",
+            "dmversion",
+            "consoletype",
+            "systeminfo",
+            "consolefeatures ver=" + JRPC.JRPCVersion + " type=13 params=\"A\\0\\A\\0\\\"",
+            "consolefeatures ver=" + JRPC.JRPCVersion + " type=17 params=\"A\\0\\A\\0\\\""
+    };
+
+    public static final long CACHE_TTL_MILLIS = 60_000;
+
+    //replies[0..XBDM_REPLIES) come from XBDM itself and must succeed for the snapshot to be cached
+    private static final int XBDM_REPLIES = 5;
+    private static final long NO_GENERATION = -1;
+
+    private static final Map<JRPC.IXboxConsole, ConsoleInfo> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final String consoleId;
+    private final String boxId;
+    private final String dmVersion;
+    private final String xbdmType;
+    private final String systemInfo;
+    private final Map<String, String> systemFields;
+    private final long kernelVersion;
+    private final String consoleType;
+    private final long generation;
+    private final long fetchedMillis;
+
+    private ConsoleInfo(String[] replies, long generation) {
+        this.consoleId = XboxFeatures.strip200(replies[0]).replace("consoleid=", "").trim();
+        this.boxId = XboxFeatures.strip200(replies[1]);
+        this.dmVersion = XboxFeatures.strip200(replies[2]);
+        this.xbdmType = XboxFeatures.strip200(replies[3]);
+        this.systemInfo = replies[4];
+        this.systemFields = Collections.unmodifiableMap(XboxFeatures.parseKeyValueBlock(replies[4]));
+        this.kernelVersion = featureNumber(replies[5]);
+        this.consoleType = featureText(replies[6]);
+        this.generation = generation;
+        this.fetchedMillis = System.currentTimeMillis();
+    }
+
+    /**The cached snapshot for this console, fetched again after reboot(), a reconnect or the TTL.*/
+    public static ConsoleInfo of(JRPC.IXboxConsole c) {
+        ConsoleInfo info = cache.get(innermost(c));
+        if (info != null && info.fresh(c)) return info;
+        return load(c);
+    }
+
+    /**Fetches a fresh snapshot and caches it when every XBDM command succeeded.*/
+    public static ConsoleInfo load(JRPC.IXboxConsole c) {
+        String[] replies = c instanceof JRPC.IXboxRawConsole raw ? pipelined(raw) : sequential(c);
+        //read after the fetch, which may itself have opened the connection
+        ConsoleInfo info = new ConsoleInfo(replies, generationOf(c));
+        boolean complete = true;
+        for (int i = 0; i < XBDM_REPLIES; i++) complete &= replies[i] != null && replies[i].startsWith("2");
+        if (complete) cache.put(innermost(c), info);
+        else cache.remove(innermost(c));
+        return info;
+    }
+
+    public static void invalidate(JRPC.IXboxConsole c) {
+        cache.remove(innermost(c));
+    }
+
+    private boolean fresh(JRPC.IXboxConsole c) {
+        if (generation != NO_GENERATION) return generation == generationOf(c);
+        return System.currentTimeMillis() - fetchedMillis <= CACHE_TTL_MILLIS;
+    }
+
+    private static String[] pipelined(JRPC.IXboxRawConsole c) {
+        return c.Converse(link -> {
+            for (String cmd : COMMANDS) link.writeLine(cmd);
+            link.flush();
+            String[] replies = new String[COMMANDS.length];
+            for (int i = 0; i < replies.length; i++) replies[i] = readReply(link);
+            return replies;
+        });
+    }
+
+    private static String[] sequential(JRPC.IXboxConsole c) {
+        String[] replies = new String[COMMANDS.length];
+        for (int i = 0; i < replies.length; i++) replies[i] = XboxFeatures.sendRaw(c, COMMANDS[i]);
+        return replies;
+    }
+
+    //one reply in the form SendTextCommand returns it: the status line, then any multi-line body joined by \n
+    private static String readReply(JRPC.IXboxRawConnection link) throws IOException {
+        String first = link.readLine();
+        if (!first.toLowerCase(Locale.ROOT).contains("response follows")) return first;
+        StringBuilder sb = new StringBuilder(first);
+        for (String line = link.readLine(); !line.equals("."); line = link.readLine()) sb.append('\n').append(line);
+        return sb.toString();
+    }
+
+    //recordings and scheduler views share the snapshot, and the connection count, of the console they wrap
+    private static JRPC.IXboxConsole innermost(JRPC.IXboxConsole c) {
+        while (c instanceof JRPC.IXboxConsoleDecorator d) c = d.getDelegate();
+        return c;
+    }
+
+    private static long generationOf(JRPC.IXboxConsole c) {
+        return innermost(c) instanceof JRPC.XbdmXboxConsole x ? x.getConnectionGeneration() : NO_GENERATION;
+    }
+
+    //consolefeatures replies carry their value after the first space, as in JRPC.GetKernelVersion
+    private static String featureText(String reply) {
+        if (reply == null || !reply.startsWith("200") || reply.contains("error=")) return "";
+        return reply.substring(reply.indexOf(' ') + 1).trim();
+    }
+
+    private static long featureNumber(String reply) {
+        try {
+            return Long.parseLong(featureText(reply));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public String getConsoleId() {
+        return consoleId;
+    }
+
+    public String getBoxId() {
+        return boxId;
+    }
+
+    public String getDMVersion() {
+        return dmVersion;
+    }
+
+    /**Console type as reported by the JRPC plugin; empty when the plugin is not installed.*/
+    public String getConsoleType() {
+        return consoleType;
+    }
+
+    public long getKernelVersion() {
+        return kernelVersion;
+    }
+
+    /**One field of the systeminfo block; SystemInfo.Type is XBDM's own consoletype reply.*/
+    public String getSystemInfo(XboxFeatures.SystemInfo info) {
+        return switch (info) {
+            case Type -> xbdmType;
+            case HDD -> firstNonEmpty("hdd", "hddinfo", "harddisk", "hard_drive");
+            case Platform -> firstNonEmpty("platform", "platform_id", "board", "console");
+            case System -> firstNonEmpty("system", "os", "name");
+            case BaseKrnlVersion -> firstNonEmpty("baseversion", "basekrnlversion", "base_kernel");
+            case KrnlVersion -> firstNonEmpty("krnlversion", "kernel", "kernelversion");
+            case XDKVersion -> firstNonEmpty("xdkversion", "xdks", "xdk");
+        };
+    }
+
+    /**The systeminfo reply as the console sent it.*/
+    public String getSystemInfoText() {
+        return systemInfo;
+    }
+
+    public Map<String, String> getSystemInfoFields() {
+        return systemFields;
+    }
+
+    public long getFetchedMillis() {
+        return fetchedMillis;
+    }
+
+    private String firstNonEmpty(String... keys) {
+        for (String k : keys) {
+            String v = systemFields.get(k);
+            if (v != null && !v.isBlank()) return v;
+        }
+        return "";
+    }
+}
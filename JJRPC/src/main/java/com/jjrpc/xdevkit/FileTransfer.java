@@ -0,0 +1,243 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.JRPC;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**File transfer to and from console drives with XBDM's getfile, sendfile and writefile. Data is streamed between
+ * the connection and a local FileChannel in fixed-size chunks; interrupted transfers can resume from what the
+ * destination already holds. Several files move in parallel, each on its own pooled connection.*/
+public final class FileTransfer implements Closeable {
+
+    private static final int CHUNK = 64 * 1024;
+
+    /**Called after every chunk with the bytes moved so far in this transfer, including resumed bytes.*/
+    public interface Listener {
+        void progress(String remote, long done, long total, double bytesPerSecond);
+    }
+
+    /**@param transferred bytes moved by this call, not counting the part that was resumed*/
+    public record Result(String remote, Path local, long offset, long transferred, long nanos) {
+        public double bytesPerSecond() {
+            return nanos == 0 ? 0 : transferred * 1e9 / nanos;
+        }
+    }
+
+    private final Supplier<? extends JRPC.IXboxRawConsole> factory;
+    private final BlockingQueue<JRPC.IXboxRawConsole> idle = new LinkedBlockingQueue<>();
+    private final List<JRPC.IXboxRawConsole> all = new ArrayList<>();
+    private final Semaphore connections;
+    private final ExecutorService workers;
+    private volatile Listener listener;
+
+    public FileTransfer(String host, int parallelism) {
+        this(host, 730, parallelism);
+    }
+
+    public FileTransfer(String host, int port, int parallelism) {
+        this(() -> new JRPC.XbdmXboxConsole(host, port), parallelism);
+    }
+
+    /**@param factory opens a new connection to the console; at most parallelism are opened*/
+    public FileTransfer(Supplier<? extends JRPC.IXboxRawConsole> factory, int parallelism) {
+        this.factory = factory;
+        this.connections = new Semaphore(parallelism);
+        this.workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "jjrpc-transfer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**Copies a console file to local. With resume, an existing local file is taken as the first part of the remote one.*/
+    public CompletableFuture<Result> download(String remote, Path local, boolean resume) {
+        return submit(c -> download(c, remote, local, resume));
+    }
+
+    /**Copies local to the console. With resume, an existing remote file is taken as the first part of the local one.*/
+    public CompletableFuture<Result> upload(Path local, String remote, boolean resume) {
+        return submit(c -> upload(c, local, remote, resume));
+    }
+
+    /**Size of a console file, or -1 when it does not exist.*/
+    public long remoteSize(String remote) {
+        JRPC.IXboxRawConsole c = acquire();
+        long size;
+        try {
+            size = remoteSize(c, remote);
+        } catch (RuntimeException | Error e) {
+            discard(c);
+            throw e;
+        }
+        release(c);
+        return size;
+    }
+
+    private interface Job {
+        Result run(JRPC.IXboxRawConsole c) throws IOException;
+    }
+
+    private CompletableFuture<Result> submit(Job job) {
+        return CompletableFuture.supplyAsync(() -> {
+            JRPC.IXboxRawConsole c = acquire();
+            Result r;
+            try {
+                r = job.run(c);
+            } catch (IOException e) {
+                discard(c);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException | Error e) {
+                discard(c);
+                throw e;
+            }
+            release(c);
+            return r;
+        }, workers);
+    }
+
+    private JRPC.IXboxRawConsole acquire() {
+        JRPC.IXboxRawConsole c = idle.poll();
+        if (c != null) return c;
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JRPC.ComException(0x82DA0007, "Interrupted waiting for a connection");
+        }
+        c = idle.poll();
+        if (c != null) {
+            connections.release();
+            return c;
+        }
+        c = factory.get();
+        synchronized (all) {
+            all.add(c);
+        }
+        return c;
+    }
+
+    //back to the pool after a transfer that completed
+    private void release(JRPC.IXboxRawConsole c) {
+        idle.offer(c);
+    }
+
+    //after a failure the connection may be mid-reply or dead, so it is closed and its slot freed for a new one
+    private void discard(JRPC.IXboxRawConsole c) {
+        synchronized (all) {
+            all.remove(c);
+        }
+        if (c instanceof JRPC.XbdmXboxConsole x) x.Disconnect();
+        connections.release();
+    }
+
+    private Result download(JRPC.IXboxRawConsole c, String remote, Path local, boolean resume) throws IOException {
+        long offset = resume && Files.exists(local) ? Files.size(local) : 0;
+        if (offset > 0) {
+            long size = remoteSize(c, remote);
+            if (size >= 0 && offset >= size) return new Result(remote, local, Math.min(offset, size), 0, 0);
+        }
+        long begin = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(local, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ch.truncate(offset);
+            ch.position(offset);
+            long moved = c.Converse(link -> {
+                link.writeLine("getfile name=\"" + remote + "\"" + (offset > 0 ? " offset=0x" + Long.toHexString(offset) : ""));
+                String status = link.readLine();
+                if (!status.startsWith("203")) throw new JRPC.ComException(0x82DA0007, "getfile failed: " + status);
+                byte[] buf = new byte[CHUNK];
+                link.readFully(buf, 0, 4);
+                long length = (buf[0] & 0xFFL) | (buf[1] & 0xFFL) << 8 | (buf[2] & 0xFFL) << 16 | (buf[3] & 0xFFL) << 24;
+                long done = 0;
+                while (done < length) {
+                    int n = (int) Math.min(CHUNK, length - done);
+                    link.readFully(buf, 0, n);
+                    ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                    while (bb.hasRemaining()) ch.write(bb);
+                    done += n;
+                    report(remote, offset + done, offset + length, done, begin);
+                }
+                return done;
+            });
+            return new Result(remote, local, offset, moved, System.nanoTime() - begin);
+        }
+    }
+
+    private Result upload(JRPC.IXboxRawConsole c, Path local, String remote, boolean resume) throws IOException {
+        long begin = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(local, StandardOpenOption.READ)) {
+            long total = ch.size();
+            long existing = resume ? remoteSize(c, remote) : -1;
+            long offset = existing > 0 && existing <= total ? existing : 0;
+            if (offset == total && total > 0) return new Result(remote, local, offset, 0, 0);
+            long length = total - offset;
+            long moved = c.Converse(link -> {
+                link.writeLine(offset == 0
+                        ? "sendfile name=\"" + remote + "\" length=0x" + Long.toHexString(length)
+                        : "writefile name=\"" + remote + "\" offset=0x" + Long.toHexString(offset) + " length=0x" + Long.toHexString(length));
+                String status = link.readLine();
+                if (!status.startsWith("204")) throw new JRPC.ComException(0x82DA0007, "sendfile failed: " + status);
+                byte[] buf = new byte[CHUNK];
+                ByteBuffer bb = ByteBuffer.wrap(buf);
+                long done = 0;
+                while (done < length) {
+                    bb.clear().limit((int) Math.min(CHUNK, length - done));
+                    int n = ch.read(bb, offset + done);
+                    if (n < 0) throw new IOException(local + " shrank during upload");
+                    link.write(buf, 0, n);
+                    done += n;
+                    report(remote, offset + done, total, done, begin);
+                }
+                link.flush();
+                String end = link.readLine();
+                if (!end.startsWith("200")) throw new JRPC.ComException(0x82DA0007, "sendfile failed: " + end);
+                return done;
+            });
+            return new Result(remote, local, offset, moved, System.nanoTime() - begin);
+        }
+    }
+
+    private static long remoteSize(JRPC.IXboxRawConsole c, String remote) {
+        String r = XboxFeatures.sendRaw(c, "getfileattributes name=\"" + remote + "\"");
+        if (!r.startsWith("2")) return -1;
+        for (String l : XbdmResponse.lines(r)) {
+            Map<String, String> f = XbdmResponse.fields(l);
+            if (f.containsKey("sizelo")) return XbdmResponse.number(f, "sizehi", 0) << 32 | XbdmResponse.number(f, "sizelo", 0);
+        }
+        return -1;
+    }
+
+    private void report(String remote, long done, long total, long moved, long begin) {
+        Listener l = listener;
+        if (l == null) return;
+        long nanos = System.nanoTime() - begin;
+        l.progress(remote, done, total, nanos == 0 ? 0 : moved * 1e9 / nanos);
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+        synchronized (all) {
+            for (JRPC.IXboxRawConsole c : all) {
+                if (c instanceof JRPC.XbdmXboxConsole x) x.Disconnect();
+            }
+            all.clear();
+        }
+        idle.clear();
+    }
+}
@@ -0,0 +1,155 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.JRPC;
+import com.jjrpc.MemoryRange;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**A copy of console memory as sorted blocks, read over the link or memory-mapped from a file written by save().*/
+public final class MemoryDump {
+
+    private static final int MAGIC = 0x4A4A5044; // "JJPD"
+    private static final int PAGE = 4096;
+
+    private final long[] bases;
+    private final ByteBuffer[] blocks;
+
+    private MemoryDump(long[] bases, ByteBuffer[] blocks) {
+        this.bases = bases;
+        this.blocks = blocks;
+    }
+
+    /**Dumps every readable region of the running title.*/
+    public static MemoryDump read(JRPC.IXboxConsole c) {
+        return read(c, MemoryRegionMap.of(c).readableRanges());
+    }
+
+    /**Reads the ranges through JRPC.ReadMemory, so large ranges go out in chunks sized by the console's ChunkTuner.
+     * Unmapped pages a request could not return are left zero and reading resumes at the next page; any other
+     * failure, e.g. the console dropping the connection, ends the dump with a ComException.*/
+    public static MemoryDump read(JRPC.IXboxConsole c, Collection<MemoryRange> ranges) {
+        List<MemoryRange> sorted = MemoryRange.coalesce(ranges, 0);
+        long[] bases = new long[sorted.size()];
+        ByteBuffer[] blocks = new ByteBuffer[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            MemoryRange r = sorted.get(i);
+            byte[] data = new byte[r.length()];
+            for (int off = 0; off < data.length; ) {
+                int n;
+                try {
+                    n = JRPC.ReadMemory(c, r.address() + off, data, off, data.length - off);
+                } catch (JRPC.ComException e) {
+                    if (e.getErrorCode() != JRPC.XBDM_MEMUNMAPPED) throw e;
+                    n = 0;
+                }
+                //skip to the page after the first byte that could not be read
+                long stop = r.address() + off + n;
+                off = n == data.length - off ? data.length : (int) (((stop | (PAGE - 1)) + 1) - r.address());
+            }
+            bases[i] = r.address();
+            blocks[i] = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        }
+        return new MemoryDump(bases, blocks);
+    }
+
+    public void save(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(8 + 12 * bases.length);
+            header.putInt(MAGIC).putInt(bases.length);
+            for (int i = 0; i < bases.length; i++) header.putLong(bases[i]).putInt(blocks[i].capacity());
+            header.flip();
+            while (header.hasRemaining()) ch.write(header);
+            for (ByteBuffer b : blocks) {
+                ByteBuffer d = b.duplicate();
+                d.clear();
+                while (d.hasRemaining()) ch.write(d);
+            }
+        }
+    }
+
+    /**Maps a file written by save() without copying it onto the heap.*/
+    public static MemoryDump map(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(8);
+            ch.read(head, 0);
+            head.flip();
+            if (head.getInt() != MAGIC) throw new IOException("Not a memory dump: " + file);
+            int n = head.getInt();
+            ByteBuffer table = ByteBuffer.allocate(12 * n);
+            ch.read(table, 8);
+            table.flip();
+            long[] bases = new long[n];
+            int[] lengths = new int[n];
+            for (int i = 0; i < n; i++) {
+                bases[i] = table.getLong();
+                lengths[i] = table.getInt();
+            }
+            ByteBuffer[] blocks = new ByteBuffer[n];
+            long pos = 8 + 12L * n;
+            for (int i = 0; i < n; i++) {
+                blocks[i] = ch.map(FileChannel.MapMode.READ_ONLY, pos, lengths[i]).order(ByteOrder.BIG_ENDIAN);
+                pos += lengths[i];
+            }
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong(i -> bases[i]));
+            long[] sortedBases = new long[n];
+            ByteBuffer[] sortedBlocks = new ByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                sortedBases[i] = bases[order[i]];
+                sortedBlocks[i] = blocks[order[i]];
+            }
+            return new MemoryDump(sortedBases, sortedBlocks);
+        }
+    }
+
+    public int blockCount() {
+        return bases.length;
+    }
+
+    public long base(int i) {
+        return bases[i];
+    }
+
+    public int length(int i) {
+        return blocks[i].capacity();
+    }
+
+    /**Read-only big-endian view of block i.*/
+    public ByteBuffer block(int i) {
+        return blocks[i].asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    public List<MemoryRange> ranges() {
+        List<MemoryRange> out = new ArrayList<>(bases.length);
+        for (int i = 0; i < bases.length; i++) out.add(new MemoryRange(bases[i], blocks[i].capacity()));
+        return out;
+    }
+
+    public boolean contains(long address, int length) {
+        return blockOf(address, length) >= 0;
+    }
+
+    public long readUInt32(long address) {
+        int i = blockOf(address, 4);
+        if (i < 0) throw new IllegalArgumentException("0x" + Long.toHexString(address) + " is not in the dump");
+        return blocks[i].getInt((int) (address - bases[i])) & 0xFFFFFFFFL;
+    }
+
+    private int blockOf(long address, int length) {
+        int i = Arrays.binarySearch(bases, address);
+        if (i < 0) i = -i - 2;
+        if (i < 0) return -1;
+        return address + length <= bases[i] + blocks[i].capacity() ? i : -1;
+    }
+}
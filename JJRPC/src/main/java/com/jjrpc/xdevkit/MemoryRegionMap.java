@@ -0,0 +1,167 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.JRPC;
+import com.jjrpc.MemoryRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**Committed virtual memory as reported by XBDM's walkmem, held as sorted primitive arrays.
+ * Lets scans and dumps iterate only over readable pages instead of guessing address ranges.*/
+public final class MemoryRegionMap {
+
+    public static final int PAGE_NOACCESS = 0x01;
+    public static final int PAGE_READONLY = 0x02;
+    public static final int PAGE_READWRITE = 0x04;
+    public static final int PAGE_WRITECOPY = 0x08;
+    public static final int PAGE_EXECUTE = 0x10;
+    public static final int PAGE_EXECUTE_READ = 0x20;
+    public static final int PAGE_EXECUTE_READWRITE = 0x40;
+    public static final int PAGE_EXECUTE_WRITECOPY = 0x80;
+    public static final int PAGE_GUARD = 0x100;
+    public static final int PAGE_NOCACHE = 0x200;
+    public static final int PAGE_WRITECOMBINE = 0x400;
+
+    private static final int READABLE = PAGE_READONLY | PAGE_READWRITE | PAGE_WRITECOPY
+            | PAGE_EXECUTE_READ | PAGE_EXECUTE_READWRITE | PAGE_EXECUTE_WRITECOPY;
+    private static final int WRITABLE = PAGE_READWRITE | PAGE_WRITECOPY | PAGE_EXECUTE_READWRITE | PAGE_EXECUTE_WRITECOPY;
+
+    private static final Map<JRPC.IXboxConsole, MemoryRegionMap> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final long[] bases;
+    private final long[] ends;
+    private final int[] protect;
+    private final long titleId;
+
+    private MemoryRegionMap(long[] bases, long[] ends, int[] protect, long titleId) {
+        this.bases = bases;
+        this.ends = ends;
+        this.protect = protect;
+        this.titleId = titleId;
+    }
+
+    /**The cached map for this console, reloaded when the running title has changed since it was built.
+     * Title detection needs the JRPC plugin; without it the map is only reloaded by load().*/
+    public static MemoryRegionMap of(JRPC.IXboxConsole c) {
+        MemoryRegionMap m = cache.get(c);
+        long title = currentTitle(c);
+        if (m != null && (title == 0 || m.titleId == title)) return m;
+        return load(c, title);
+    }
+
+    public static MemoryRegionMap load(JRPC.IXboxConsole c) {
+        return load(c, currentTitle(c));
+    }
+
+    private static MemoryRegionMap load(JRPC.IXboxConsole c, long title) {
+        List<String> lines = XbdmResponse.lines(XboxFeatures.sendRaw(c, "walkmem"));
+        long[][] rows = new long[lines.size()][];
+        int n = 0;
+        for (String l : lines) {
+            Map<String, String> f = XbdmResponse.fields(l);
+            long base = XbdmResponse.number(f, "base", -1);
+            long size = XbdmResponse.number(f, "size", 0);
+            if (base < 0 || size <= 0) continue;
+            rows[n++] = new long[]{base, base + size, XbdmResponse.number(f, "protect", 0)};
+        }
+        rows = Arrays.copyOf(rows, n);
+        Arrays.sort(rows, (a, b) -> Long.compare(a[0], b[0]));
+        long[] bases = new long[n], ends = new long[n];
+        int[] protect = new int[n];
+        for (int i = 0; i < n; i++) {
+            bases[i] = rows[i][0];
+            ends[i] = rows[i][1];
+            protect[i] = (int) rows[i][2];
+        }
+        MemoryRegionMap m = new MemoryRegionMap(bases, ends, protect, title);
+        cache.put(c, m);
+        return m;
+    }
+
+    private static long currentTitle(JRPC.IXboxConsole c) {
+        try {
+            return XboxFeatures.getTitleID(c);
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    public long getTitleId() {
+        return titleId;
+    }
+
+    public int size() {
+        return bases.length;
+    }
+
+    public long base(int i) {
+        return bases[i];
+    }
+
+    public long end(int i) {
+        return ends[i];
+    }
+
+    public int protect(int i) {
+        return protect[i];
+    }
+
+    public boolean isReadable(int i) {
+        return (protect[i] & READABLE) != 0 && (protect[i] & (PAGE_GUARD | PAGE_NOACCESS)) == 0;
+    }
+
+    public boolean isWritable(int i) {
+        return (protect[i] & WRITABLE) != 0 && (protect[i] & (PAGE_GUARD | PAGE_NOACCESS)) == 0;
+    }
+
+    /**Index of the region containing address, or -1.*/
+    public int indexOf(long address) {
+        int i = Arrays.binarySearch(bases, address);
+        if (i < 0) i = -i - 2;
+        return i >= 0 && address < ends[i] ? i : -1;
+    }
+
+    /**True when every byte of [address, address + length) lies in readable regions.*/
+    public boolean isReadable(long address, long length) {
+        long end = address + length;
+        int i = indexOf(address);
+        while (i >= 0 && i < bases.length && isReadable(i)) {
+            if (ends[i] >= end) return true;
+            if (i + 1 >= bases.length || bases[i + 1] != ends[i]) return false;
+            i++;
+        }
+        return false;
+    }
+
+    public List<MemoryRange> readableRanges() {
+        return readableRanges(0, Long.MAX_VALUE);
+    }
+
+    /**Readable memory within [from, to), adjacent regions joined, split into pieces of at most Integer.MAX_VALUE bytes.*/
+    public List<MemoryRange> readableRanges(long from, long to) {
+        List<MemoryRange> out = new ArrayList<>();
+        long start = -1, end = -1;
+        for (int i = 0; i < bases.length; i++) {
+            if (!isReadable(i)) continue;
+            long b = Math.max(bases[i], from), e = Math.min(ends[i], to);
+            if (b >= e) continue;
+            if (start >= 0 && b == end) {
+                end = e;
+                continue;
+            }
+            if (start >= 0) add(out, start, end);
+            start = b;
+            end = e;
+        }
+        if (start >= 0) add(out, start, end);
+        return out;
+    }
+
+    private static void add(List<MemoryRange> out, long start, long end) {
+        for (long a = start; a < end; a += Integer.MAX_VALUE) out.add(new MemoryRange(a, (int) Math.min(Integer.MAX_VALUE, end - a)));
+    }
+}
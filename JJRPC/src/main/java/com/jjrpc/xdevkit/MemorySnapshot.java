@@ -0,0 +1,140 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.JRPC;
+import com.jjrpc.MemoryRange;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**A coherent copy of several memory ranges, read while the title is halted with stop/go.*/
+public final class MemorySnapshot {
+
+    public static final class PauseBudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long haltedNanos;
+
+        PauseBudgetExceededException(long budgetMillis, long haltedNanos) {
+            super("Snapshot exceeded its pause budget of " + budgetMillis + " ms (halted " + haltedNanos / 1_000_000L + " ms)");
+            this.haltedNanos = haltedNanos;
+        }
+
+        public long getHaltedNanos() {
+            return haltedNanos;
+        }
+    }
+
+    //largest merged block, and largest single getmem while the title is halted
+    private static final int MAX_BLOCK = 64 * 1024;
+    private static final int REQUEST = 16 * 1024;
+
+    private final long[] starts;
+    private final byte[][] blocks;
+    private final long haltedNanos;
+    private final long takenAtMillis;
+
+    private MemorySnapshot(long[] starts, byte[][] blocks, long haltedNanos, long takenAtMillis) {
+        this.starts = starts;
+        this.blocks = blocks;
+        this.haltedNanos = haltedNanos;
+        this.takenAtMillis = takenAtMillis;
+    }
+
+    public static MemorySnapshot take(JRPC.IXboxConsole c, Collection<MemoryRange> ranges, long maxPauseMillis) {
+        return take(c, ranges, maxPauseMillis, 256);
+    }
+
+    /**Merges ranges closer than maxGap bytes, stops the title, reads every merged block and resumes it.
+     * The title is always resumed; reads go out in requests of at most REQUEST bytes and the budget is checked before
+     * each one and after the last, so a snapshot that would overrun maxPauseMillis is abandoned with a
+     * PauseBudgetExceededException within one request of the budget rather than keeping the title halted.
+     * Fails with a ComException if the title could not be stopped or a range could not be read in full.*/
+    public static MemorySnapshot take(JRPC.IXboxConsole c, Collection<MemoryRange> ranges, long maxPauseMillis, int maxGap) {
+        List<MemoryRange> merged = MemoryRange.coalesce(ranges, maxGap, MAX_BLOCK);
+        long[] starts = new long[merged.size()];
+        byte[][] blocks = new byte[merged.size()][];
+        for (int i = 0; i < merged.size(); i++) {
+            starts[i] = merged.get(i).address();
+            blocks[i] = new byte[merged.get(i).length()];
+        }
+        long budget = maxPauseMillis * 1_000_000L;
+        long[] halted = new long[1];
+        JRPC.SessionOf(c).exclusive(() -> {
+            JRPC.IXboxDebugTarget target = c.DebugTarget();
+            long[] read = new long[1];
+            byte[] chunk = new byte[REQUEST];
+            boolean resume = halt(c);
+            long stopped = System.nanoTime();
+            try {
+                for (int i = 0; i < blocks.length; i++) {
+                    for (int off = 0; off < blocks[i].length; off += REQUEST) {
+                        checkBudget(stopped, budget, maxPauseMillis, halted);
+                        int n = Math.min(REQUEST, blocks[i].length - off);
+                        read[0] = 0;
+                        target.GetMemory(starts[i] + off, n, chunk, read);
+                        if (read[0] < n)
+                            throw new JRPC.ComException(0x82DA0007, "Snapshot could not read 0x" + Long.toHexString(starts[i] + off + read[0])
+                                    + ": " + read[0] + " of " + n + " bytes at 0x" + Long.toHexString(starts[i] + off));
+                        System.arraycopy(chunk, 0, blocks[i], off, n);
+                    }
+                }
+                checkBudget(stopped, budget, maxPauseMillis, halted);
+            } finally {
+                if (resume) XboxFeatures.freezeConsole(c, false);
+                if (halted[0] == 0) halted[0] = System.nanoTime() - stopped;
+            }
+        });
+        return new MemorySnapshot(starts, blocks, halted[0], System.currentTimeMillis());
+    }
+
+    //stops the title and tells whether this call did so; a title something else already stopped is read as it is
+    //and left stopped, and one that could not be stopped fails the snapshot rather than returning a torn copy
+    private static boolean halt(JRPC.IXboxConsole c) {
+        String r = XboxFeatures.sendRaw(c, "stop");
+        if (r.startsWith("200")) return true;
+        if (XboxFeatures.sendRaw(c, "isstopped").startsWith("200")) return false;
+        throw new JRPC.ComException(0x82DA0007, "Snapshot could not stop the title: " + r);
+    }
+
+    private static void checkBudget(long stopped, long budget, long maxPauseMillis, long[] halted) {
+        if (System.nanoTime() - stopped <= budget) return;
+        halted[0] = System.nanoTime() - stopped;
+        throw new PauseBudgetExceededException(maxPauseMillis, halted[0]);
+    }
+
+    public long getHaltedNanos() {
+        return haltedNanos;
+    }
+
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+
+    public boolean contains(long address, int length) {
+        return block(address, length) >= 0;
+    }
+
+    public byte[] read(long address, int length) {
+        int i = block(address, length);
+        if (i < 0) throw new IllegalArgumentException("0x" + Long.toHexString(address) + "+" + length + " is not in the snapshot");
+        int off = (int) (address - starts[i]);
+        return Arrays.copyOfRange(blocks[i], off, off + length);
+    }
+
+    public long readUInt32(long address) {
+        byte[] b = read(address, 4);
+        return ((b[0] & 0xFFL) << 24) | ((b[1] & 0xFFL) << 16) | ((b[2] & 0xFFL) << 8) | (b[3] & 0xFFL);
+    }
+
+    public float readFloat(long address) {
+        return Float.intBitsToFloat((int) readUInt32(address));
+    }
+
+    private int block(long address, int length) {
+        int i = Arrays.binarySearch(starts, address);
+        if (i < 0) i = -i - 2;
+        if (i < 0) return -1;
+        return address + length <= starts[i] + blocks[i].length ? i : -1;
+    }
+}
@@ -0,0 +1,181 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.JRPC;
+
+import java.util.*;
+
+/**Loaded modules and their sections from XBDM's modules/modsections listings, indexed by address so that
+ * address to module+section+offset resolution is a binary search with no round trip.
+ * Indexes are cached per console and title.*/
+public final class ModuleIndex {
+
+    public record Module(String name, long base, long size, long timestamp, long checksum) {
+        public long end() {
+            return base + size;
+        }
+    }
+
+    public record Section(String name, long base, long size, int index, long flags) {
+        public long end() {
+            return base + size;
+        }
+    }
+
+    public record Location(Module module, Section section, long offset) {
+        @Override
+        public String toString() {
+            return module.name() + (section != null ? "!" + section.name() : "") + "+0x" + Long.toHexString(offset);
+        }
+    }
+
+    private static final int TITLES_PER_CONSOLE = 4;
+    private static final Map<JRPC.IXboxConsole, Map<Long, ModuleIndex>> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final long titleId;
+    private final Module[] modules;
+    private final long[] moduleBases;
+    private final long[] moduleEnds;
+    private final Section[] sections;
+    private final long[] sectionBases;
+    private final long[] sectionEnds;
+    private final int[] sectionModule;
+
+    private ModuleIndex(long titleId, List<Module> mods, Map<Module, List<Section>> secs) {
+        this.titleId = titleId;
+        mods = new ArrayList<>(mods);
+        mods.sort(Comparator.comparingLong(Module::base));
+        modules = mods.toArray(new Module[0]);
+        moduleBases = new long[modules.length];
+        moduleEnds = new long[modules.length];
+        List<Section> allSections = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        for (int i = 0; i < modules.length; i++) {
+            moduleBases[i] = modules[i].base();
+            moduleEnds[i] = modules[i].end();
+            for (Section s : secs.getOrDefault(modules[i], List.of())) {
+                allSections.add(s);
+                owners.add(i);
+            }
+        }
+        Integer[] order = new Integer[allSections.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> allSections.get(i).base()));
+        sections = new Section[order.length];
+        sectionBases = new long[order.length];
+        sectionEnds = new long[order.length];
+        sectionModule = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sections[i] = allSections.get(order[i]);
+            sectionBases[i] = sections[i].base();
+            sectionEnds[i] = sections[i].end();
+            sectionModule[i] = owners.get(order[i]);
+        }
+    }
+
+    /**The index for the running title, built on first use and reused until the title changes.
+     * Costs one JRPC call to read the title id; use of(c, titleId) when it is already known.*/
+    public static ModuleIndex of(JRPC.IXboxConsole c) {
+        long title;
+        try {
+            title = XboxFeatures.getTitleID(c);
+        } catch (RuntimeException e) {
+            title = 0;
+        }
+        return of(c, title);
+    }
+
+    public static ModuleIndex of(JRPC.IXboxConsole c, long titleId) {
+        Map<Long, ModuleIndex> titles;
+        synchronized (cache) {
+            titles = cache.computeIfAbsent(c, k -> new LinkedHashMap<>(8, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, ModuleIndex> eldest) {
+                    return size() > TITLES_PER_CONSOLE;
+                }
+            });
+        }
+        synchronized (titles) {
+            ModuleIndex m = titles.get(titleId);
+            if (m == null) {
+                m = load(c, titleId);
+                titles.put(titleId, m);
+            }
+            return m;
+        }
+    }
+
+    public static void invalidate(JRPC.IXboxConsole c) {
+        cache.remove(c);
+    }
+
+    private static ModuleIndex load(JRPC.IXboxConsole c, long titleId) {
+        List<Module> mods = new ArrayList<>();
+        for (String l : XbdmResponse.lines(XboxFeatures.sendRaw(c, "modules"))) {
+            Map<String, String> f = XbdmResponse.fields(l);
+            String name = f.get("name");
+            long base = XbdmResponse.number(f, "base", -1);
+            if (name == null || base < 0) continue;
+            mods.add(new Module(name, base, XbdmResponse.number(f, "size", 0),
+                    XbdmResponse.number(f, "timestamp", 0), XbdmResponse.number(f, "check", 0)));
+        }
+        Map<Module, List<Section>> secs = new HashMap<>();
+        for (Module m : mods) {
+            List<Section> list = new ArrayList<>();
+            for (String l : XbdmResponse.lines(XboxFeatures.sendRaw(c, "modsections name=\"" + m.name() + "\""))) {
+                Map<String, String> f = XbdmResponse.fields(l);
+                long base = XbdmResponse.number(f, "base", -1);
+                if (base < 0) continue;
+                list.add(new Section(f.getOrDefault("name", ""), base, XbdmResponse.number(f, "size", 0),
+                        (int) XbdmResponse.number(f, "index", list.size()), XbdmResponse.number(f, "flags", 0)));
+            }
+            secs.put(m, list);
+        }
+        return new ModuleIndex(titleId, mods, secs);
+    }
+
+    public long getTitleId() {
+        return titleId;
+    }
+
+    public List<Module> modules() {
+        return List.of(modules);
+    }
+
+    public Module module(String name) {
+        for (Module m : modules) if (m.name().equalsIgnoreCase(name)) return m;
+        return null;
+    }
+
+    public List<Section> sections(Module m) {
+        List<Section> out = new ArrayList<>();
+        for (int i = 0; i < sections.length; i++) if (modules[sectionModule[i]].equals(m)) out.add(sections[i]);
+        return out;
+    }
+
+    public Module moduleAt(long address) {
+        int i = find(moduleBases, moduleEnds, address);
+        return i < 0 ? null : modules[i];
+    }
+
+    /**Module, section and offset from the module base for address, or null when no module covers it.*/
+    public Location resolve(long address) {
+        int s = find(sectionBases, sectionEnds, address);
+        if (s >= 0) {
+            Module m = modules[sectionModule[s]];
+            return new Location(m, sections[s], address - m.base());
+        }
+        int i = find(moduleBases, moduleEnds, address);
+        return i < 0 ? null : new Location(modules[i], null, address - modules[i].base());
+    }
+
+    public String symbolize(long address) {
+        Location l = resolve(address);
+        return l != null ? l.toString() : "0x" + Long.toHexString(address);
+    }
+
+    private static int find(long[] bases, long[] ends, long address) {
+        int i = Arrays.binarySearch(bases, address);
+        if (i < 0) i = -i - 2;
+        return i >= 0 && address < ends[i] ? i : -1;
+    }
+}
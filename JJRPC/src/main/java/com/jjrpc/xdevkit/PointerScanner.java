@@ -0,0 +1,267 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.MemoryRange;
+import com.jjrpc.PointerResolver;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**Reverse pointer search over a MemoryDump. Every aligned word that points into the heap is indexed by value,
+ * and a breadth-first walk from a target address follows those back to pointers stored inside loaded modules.
+ * Paths are kept module-relative so that scans from different boots can be intersected.*/
+public final class PointerScanner {
+
+    private static final int RESULTS_MAGIC = 0x4A4A5053; // "JJPS"
+
+    /**A chain starting at a module-relative static address, in the same form as PointerPath.*/
+    public static final class Result {
+        private final String module;
+        private final long[] offsets;
+
+        public Result(String module, long... offsets) {
+            this.module = module;
+            this.offsets = offsets.clone();
+        }
+
+        public String module() {
+            return module;
+        }
+
+        public int depth() {
+            return offsets.length - 1;
+        }
+
+        public long offset(int level) {
+            return offsets[level];
+        }
+
+        /**The path for the module's current base, or null when the module is not loaded.*/
+        public PointerResolver.PointerPath toPath(ModuleIndex modules) {
+            ModuleIndex.Module m = modules.module(module);
+            return m == null ? null : new PointerResolver.PointerPath(m.base(), offsets);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Result r && r.module.equalsIgnoreCase(module) && Arrays.equals(r.offsets, offsets);
+        }
+
+        @Override
+        public int hashCode() {
+            return module.toLowerCase(Locale.ROOT).hashCode() * 31 + Arrays.hashCode(offsets);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(module).append("+0x").append(Long.toHexString(offsets[0]));
+            for (int i = 1; i < offsets.length; i++) sb.insert(0, '[').append("]+0x").append(Long.toHexString(offsets[i]));
+            return sb.toString();
+        }
+    }
+
+    private final MemoryDump dump;
+    private final ModuleIndex modules;
+    private final long[] moduleBases;
+    private final long[] moduleEnds;
+    //(value << 32 | location) ^ Long.MIN_VALUE, so that signed order is unsigned order
+    private final long[] index;
+
+    /**Indexes every word that points anywhere inside the dump.*/
+    public PointerScanner(MemoryDump dump, ModuleIndex modules) {
+        this(dump, modules, dump.ranges());
+    }
+
+    /**@param heap only words whose value falls in one of these ranges are indexed*/
+    public PointerScanner(MemoryDump dump, ModuleIndex modules, Collection<MemoryRange> heap) {
+        this.dump = dump;
+        this.modules = modules;
+        List<ModuleIndex.Module> mods = modules.modules();
+        moduleBases = new long[mods.size()];
+        moduleEnds = new long[mods.size()];
+        for (int i = 0; i < mods.size(); i++) {
+            moduleBases[i] = mods.get(i).base();
+            moduleEnds[i] = mods.get(i).end();
+        }
+        List<MemoryRange> h = MemoryRange.coalesce(heap, 0);
+        long[] heapBases = new long[h.size()], heapEnds = new long[h.size()];
+        for (int i = 0; i < h.size(); i++) {
+            heapBases[i] = h.get(i).address();
+            heapEnds[i] = h.get(i).end();
+        }
+        long[][] parts = IntStream.range(0, dump.blockCount()).parallel()
+                .mapToObj(i -> indexBlock(i, heapBases, heapEnds))
+                .toArray(long[][]::new);
+        int total = 0;
+        for (long[] p : parts) total += p.length;
+        index = new long[total];
+        int at = 0;
+        for (long[] p : parts) {
+            System.arraycopy(p, 0, index, at, p.length);
+            at += p.length;
+        }
+        Arrays.parallelSort(index);
+    }
+
+    private long[] indexBlock(int block, long[] heapBases, long[] heapEnds) {
+        if (heapBases.length == 0) return new long[0];
+        long lo = heapBases[0], hi = heapEnds[heapEnds.length - 1];
+        ByteBuffer b = dump.block(block);
+        long base = dump.base(block);
+        int start = (int) (-base & 3);
+        long[] out = new long[Math.max(16, b.capacity() / 64)];
+        int n = 0;
+        for (int off = start; off + 4 <= b.capacity(); off += 4) {
+            long v = b.getInt(off) & 0xFFFFFFFFL;
+            if (v < lo || v >= hi || find(heapBases, heapEnds, v) < 0) continue;
+            if (n == out.length) out = Arrays.copyOf(out, out.length + (out.length >> 1));
+            out[n++] = ((v << 32) | (base + off)) ^ Long.MIN_VALUE;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**Number of indexed pointers.*/
+    public int size() {
+        return index.length;
+    }
+
+    /**Locations of every indexed word whose value lies in [from, to].*/
+    public long[] pointersTo(long from, long to) {
+        int[] span = span(from, to);
+        long[] out = new long[span[1] - span[0]];
+        for (int i = 0; i < out.length; i++) out[i] = index[span[0] + i] & 0xFFFFFFFFL;
+        return out;
+    }
+
+    public List<Result> scan(long target, int maxDepth, int maxOffset) {
+        return scan(target, maxDepth, maxOffset, 100_000);
+    }
+
+    /**Walks back from target for at most maxDepth dereferences, allowing a pointer to land up to maxOffset bytes
+     * below the address it leads to. Every location is expanded once, at the shallowest depth it is reached.
+     * Stops after maxResults paths.*/
+    public List<Result> scan(long target, int maxDepth, int maxOffset, int maxResults) {
+        long[] addr = {target};
+        int[] parent = {-1};
+        long[] offset = {0};
+        int count = 1;
+        Set<Long> seen = new HashSet<>();
+        seen.add(target);
+        List<Result> results = new ArrayList<>();
+        int levelStart = 0, levelEnd = 1;
+        for (int depth = 1; depth <= maxDepth && levelStart < levelEnd; depth++) {
+            long[] nodes = Arrays.copyOfRange(addr, levelStart, levelEnd);
+            int[][] spans = IntStream.range(0, nodes.length).parallel()
+                    .mapToObj(i -> span(Math.max(0, nodes[i] - maxOffset), nodes[i]))
+                    .toArray(int[][]::new);
+            for (int i = 0; i < nodes.length; i++) {
+                for (int k = spans[i][0]; k < spans[i][1]; k++) {
+                    long e = index[k] ^ Long.MIN_VALUE;
+                    long location = e & 0xFFFFFFFFL;
+                    long off = nodes[i] - (e >>> 32);
+                    int m = find(moduleBases, moduleEnds, location);
+                    if (m >= 0) {
+                        results.add(result(m, location, off, levelStart + i, parent, offset));
+                        if (results.size() >= maxResults) return results;
+                        continue;
+                    }
+                    if (depth == maxDepth || !seen.add(location)) continue;
+                    if (count == addr.length) {
+                        int grow = Math.max(16, count >> 1);
+                        addr = Arrays.copyOf(addr, count + grow);
+                        parent = Arrays.copyOf(parent, count + grow);
+                        offset = Arrays.copyOf(offset, count + grow);
+                    }
+                    addr[count] = location;
+                    parent[count] = levelStart + i;
+                    offset[count] = off;
+                    count++;
+                }
+            }
+            levelStart = levelEnd;
+            levelEnd = count;
+        }
+        return results;
+    }
+
+    //static location -> its offset within the module, then the offset added after each dereference up to the target
+    private Result result(int module, long location, long off, int node, int[] parent, long[] offset) {
+        List<Long> chain = new ArrayList<>();
+        chain.add(location - moduleBases[module]);
+        chain.add(off);
+        for (int n = node; parent[n] >= 0; n = parent[n]) chain.add(offset[n]);
+        long[] offsets = chain.stream().mapToLong(Long::longValue).toArray();
+        return new Result(modules.modules().get(module).name(), offsets);
+    }
+
+    private int[] span(long from, long to) {
+        long lo = ((from << 32) | 0L) ^ Long.MIN_VALUE;
+        long hi = ((to << 32) | 0xFFFFFFFFL) ^ Long.MIN_VALUE;
+        int a = Arrays.binarySearch(index, lo);
+        if (a < 0) a = -a - 1;
+        int b = Arrays.binarySearch(index, hi);
+        b = b < 0 ? -b - 1 : b + 1;
+        return new int[]{a, b};
+    }
+
+    private static int find(long[] bases, long[] ends, long address) {
+        int i = Arrays.binarySearch(bases, address);
+        if (i < 0) i = -i - 2;
+        return i >= 0 && address < ends[i] ? i : -1;
+    }
+
+    public static void save(Path file, Collection<Result> results) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(RESULTS_MAGIC);
+            out.writeInt(results.size());
+            for (Result r : results) {
+                out.writeUTF(r.module);
+                out.writeByte(r.offsets.length);
+                for (long o : r.offsets) out.writeLong(o);
+            }
+        }
+    }
+
+    public static List<Result> load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != RESULTS_MAGIC) throw new IOException("Not a pointer scan: " + file);
+            int n = in.readInt();
+            List<Result> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                String module = in.readUTF();
+                long[] offsets = new long[in.readUnsignedByte()];
+                for (int k = 0; k < offsets.length; k++) offsets[k] = in.readLong();
+                out.add(new Result(module, offsets));
+            }
+            return out;
+        }
+    }
+
+    /**Paths present in both scans, in the order of a.*/
+    public static List<Result> intersect(Collection<Result> a, Collection<Result> b) {
+        Set<Result> keep = new HashSet<>(b);
+        List<Result> out = new ArrayList<>();
+        for (Result r : a) if (keep.contains(r)) out.add(r);
+        return out;
+    }
+
+    /**Keeps the results that still lead to target in this scanner's dump, e.g. after a reboot.*/
+    public List<Result> filter(Collection<Result> results, long target) {
+        List<Result> out = new ArrayList<>();
+        for (Result r : results) {
+            ModuleIndex.Module m = modules.module(r.module);
+            if (m == null) continue;
+            long at = m.base() + r.offsets[0];
+            boolean ok = true;
+            for (int i = 1; i < r.offsets.length && ok; i++) {
+                if (!dump.contains(at, 4)) ok = false;
+                else at = dump.readUInt32(at) + r.offsets[i];
+            }
+            if (ok && at == target) out.add(r);
+        }
+        return out;
+    }
+}
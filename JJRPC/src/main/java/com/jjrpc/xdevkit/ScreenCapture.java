@@ -0,0 +1,307 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.JRPC;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**Frame-buffer capture through XBDM's screenshot command. Frame data is read straight from the connection into
+ * a small pool of reusable buffers and converted to PNG on worker threads, so continuous capture does not
+ * allocate a new frame-sized array per frame. When every buffer is in use, continuous capture drops frames.*/
+public final class ScreenCapture implements Closeable {
+
+    private static final int D3DFORMAT_TILED = 0x100;
+
+    /**The header line XBDM sends before the frame data.*/
+    public record Header(int pitch, int width, int height, int format, int frameBufferSize) {
+        public boolean tiled() {
+            return (format & D3DFORMAT_TILED) != 0;
+        }
+
+        static Header parse(String line) {
+            Map<String, String> f = XbdmResponse.fields(line.replace(',', ' '));
+            return new Header((int) XbdmResponse.number(f, "pitch", 0), (int) XbdmResponse.number(f, "width", 0),
+                    (int) XbdmResponse.number(f, "height", 0), (int) XbdmResponse.number(f, "format", 0),
+                    (int) XbdmResponse.number(f, "framebuffersize", 0));
+        }
+    }
+
+    /**A captured frame backed by a pooled buffer. Call release() once the frame is no longer needed.*/
+    public final class Frame {
+        private final Header header;
+        private final byte[] data;
+        private final long nanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Frame(Header header, byte[] data, long nanos) {
+            this.header = header;
+            this.data = data;
+            this.nanos = nanos;
+        }
+
+        public Header header() {
+            return header;
+        }
+
+        /**System.nanoTime() when the frame finished arriving.*/
+        public long nanos() {
+            return nanos;
+        }
+
+        /**Raw frame data; only the first header().frameBufferSize() bytes are valid.*/
+        public byte[] data() {
+            return data;
+        }
+
+        /**Copies the frame into img as 0xRRGGBB pixels, untiling it when needed. img must be TYPE_INT_RGB of the frame's size.*/
+        public void toPixels(BufferedImage img) {
+            int[] px = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            int w = header.width(), h = header.height(), limit = Math.min(header.frameBufferSize(), data.length) - 3;
+            if (header.tiled()) {
+                int alignedW = (w + 31) & ~31, alignedH = (h + 31) & ~31;
+                for (int i = 0; i < alignedW * alignedH && i * 4 < limit; i++) {
+                    int x = tiledX(i, alignedW), y = tiledY(i, alignedW);
+                    if (x < w && y < h) px[y * w + x] = pixel(i * 4);
+                }
+            } else {
+                for (int y = 0; y < h; y++) {
+                    int row = y * header.pitch();
+                    for (int x = 0; x < w && row + x * 4 < limit; x++) px[y * w + x] = pixel(row + x * 4);
+                }
+            }
+        }
+
+        private int pixel(int at) {
+            return ((data[at + 1] & 0xFF) << 16) | ((data[at + 2] & 0xFF) << 8) | (data[at + 3] & 0xFF);
+        }
+
+        public BufferedImage toImage() {
+            BufferedImage img = new BufferedImage(header.width(), header.height(), BufferedImage.TYPE_INT_RGB);
+            toPixels(img);
+            return img;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) recycle(data);
+        }
+    }
+
+    private final JRPC.IXboxRawConsole console;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private final ExecutorService encoders;
+    private final ThreadLocal<BufferedImage> scratch = new ThreadLocal<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jjrpc-capture");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile RuntimeException lastError;
+    private ScheduledFuture<?> task;
+
+    public ScreenCapture(JRPC.IXboxRawConsole console) {
+        this(console, 4, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**@param buffers frames that may be held at once
+     * @param encoderThreads PNG encoding workers*/
+    public ScreenCapture(JRPC.IXboxRawConsole console, int buffers, int encoderThreads) {
+        this.console = console;
+        this.permits = new Semaphore(buffers);
+        this.encoders = Executors.newFixedThreadPool(encoderThreads, r -> {
+            Thread t = new Thread(r, "jjrpc-png");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**Captures one frame, waiting for a free buffer if all are in use.*/
+    public Frame grab() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JRPC.ComException(0x82DA0007, "Interrupted waiting for a capture buffer");
+        }
+        return capture();
+    }
+
+    /**Captures one frame, or returns null at once when no buffer is free.*/
+    public Frame tryGrab() {
+        if (!permits.tryAcquire()) {
+            dropped.incrementAndGet();
+            return null;
+        }
+        return capture();
+    }
+
+    //called holding a permit, which passes to the returned frame
+    private Frame capture() {
+        try {
+            Frame f = console.Converse(link -> {
+                link.writeLine("screenshot");
+                String status = link.readLine();
+                if (!status.startsWith("203")) throw new JRPC.ComException(0x82DA0007, "screenshot failed: " + status);
+                Header h = Header.parse(link.readLine());
+                byte[] buf = take(h.frameBufferSize());
+                try {
+                    link.readFully(buf, 0, h.frameBufferSize());
+                } catch (IOException | RuntimeException e) {
+                    free.offer(buf);
+                    throw e;
+                }
+                return new Frame(h, buf, System.nanoTime());
+            });
+            captured.incrementAndGet();
+            return f;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private byte[] take(int size) {
+        byte[] b = free.poll();
+        return b != null && b.length >= size ? b : new byte[size];
+    }
+
+    private void recycle(byte[] b) {
+        free.offer(b);
+        permits.release();
+    }
+
+    /**Encodes the frame as PNG on the worker pool and releases it.*/
+    public CompletableFuture<byte[]> encodePng(Frame f) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(f.header().width() * f.header().height());
+                ImageIO.write(pixels(f), "png", out);
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                f.release();
+            }
+        }, encoders);
+    }
+
+    /**Writes the frame as a PNG file on the worker pool and releases it.*/
+    public CompletableFuture<Path> savePng(Frame f, Path file) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (var out = Files.newOutputStream(file)) {
+                ImageIO.write(pixels(f), "png", out);
+                return file;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                f.release();
+            }
+        }, encoders);
+    }
+
+    //per-worker image reused while the resolution stays the same
+    private BufferedImage pixels(Frame f) {
+        BufferedImage img = scratch.get();
+        if (img == null || img.getWidth() != f.header().width() || img.getHeight() != f.header().height()) {
+            img = new BufferedImage(f.header().width(), f.header().height(), BufferedImage.TYPE_INT_RGB);
+            scratch.set(img);
+        }
+        f.toPixels(img);
+        return img;
+    }
+
+    /**Captures fps frames per second into sink until stop(). The sink owns each frame and must release it;
+     * frames are dropped while no buffer is free. A failed grab or a sink that throws is recorded in getLastError()
+     * and capture goes on; the frame the sink threw on is released.*/
+    public synchronized void start(double fps, Consumer<Frame> sink) {
+        stop();
+        long period = Math.max(1, (long) (1_000_000_000L / fps));
+        //an exception escaping the task would cancel the schedule without a word
+        task = timer.scheduleAtFixedRate(() -> {
+            Frame f;
+            try {
+                f = tryGrab();
+            } catch (RuntimeException e) {
+                lastError = e;
+                return;
+            }
+            if (f == null) return;
+            try {
+                sink.accept(f);
+            } catch (RuntimeException e) {
+                f.release();
+                lastError = e;
+            }
+        }, 0, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**Saves numbered PNG files into dir at fps frames per second until stop(). Failed writes show in getLastError().*/
+    public void startRecording(double fps, Path dir) {
+        AtomicLong n = new AtomicLong();
+        start(fps, f -> savePng(f, dir.resolve(String.format("frame-%06d.png", n.getAndIncrement()))).whenComplete((p, e) -> {
+            if (e != null) lastError = e instanceof RuntimeException r ? r : new CompletionException(e);
+        }));
+    }
+
+    /**The most recent failure of continuous capture, or null if none has failed. A later success does not clear it.*/
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+
+    public synchronized void stop() {
+        if (task != null) task.cancel(false);
+        task = null;
+    }
+
+    public long getCaptured() {
+        return captured.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() {
+        stop();
+        timer.shutdownNow();
+        encoders.shutdown();
+    }
+
+    //Xenos 2D tiling for 32-bit texels: texel index within the tiled surface -> x and y
+    private static int tiledX(int offset, int alignedWidth) {
+        int offsetB = offset << 2;
+        int offsetT = ((offsetB & ~4095) >> 3) + ((offsetB & 1792) >> 2) + (offsetB & 63);
+        int offsetM = offsetT >> 9;
+        int macroX = (offsetM % (alignedWidth >> 5)) << 2;
+        int tile = (((offsetT >> 7) & 2) + (offsetB >> 6)) & 3;
+        int macro = (macroX + tile) << 3;
+        int micro = ((((offsetT >> 1) & ~15) + (offsetT & 15)) & 31) >> 2;
+        return macro + micro;
+    }
+
+    private static int tiledY(int offset, int alignedWidth) {
+        int offsetB = offset << 2;
+        int offsetT = ((offsetB & ~4095) >> 3) + ((offsetB & 1792) >> 2) + (offsetB & 63);
+        int offsetM = offsetT >> 9;
+        int macroY = (offsetM / (alignedWidth >> 5)) << 2;
+        int tile = ((offsetT >> 8) & 1) + ((offsetB & 2048) >> 10);
+        int macro = (macroY + tile) << 3;
+        int micro = ((((offsetT & 224) + ((offsetT & 15) << 1)) >> 5) & ~1);
+        return macro + micro + ((offsetT & 16) >> 4);
+    }
+}
@@ -0,0 +1,308 @@
+package com.jjrpc.xdevkit;
+
+import com.jjrpc.JRPC;
+import com.jjrpc.MemoryRange;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**Compressed container for memory captures. Memory is stored as 4 KiB pages, each compressed on its own so any page
+ * can be read without touching the rest of the file. A snapshot may name a base snapshot of the same title, in which
+ * case pages are stored XORed against the base page at the same address and pages equal to the base take no space.
+ * <pre>
+ * header:  magic, version, id, base id, base file name, metadata
+ * pages:   deflated page bodies
+ * index:   count, then per page address, length, kind, file offset, stored length
+ * trailer: index offset, magic
+ * </pre>*/
+public final class SnapshotFile implements Closeable {
+
+    public static final int PAGE_SIZE = 4096;
+
+    private static final int MAGIC = 0x4A4A534E; // "JJSN"
+    private static final int VERSION = 1;
+    private static final byte RAW = 0;
+    private static final byte DELTA = 1;
+    private static final byte SAME = 2;
+
+    /**Where and when a capture was taken.*/
+    public record Metadata(String consoleId, long titleId, long kernelVersion, long capturedMillis, long durationNanos) {
+        /**Reads the console id, title id and kernel version. Values the console cannot report are left empty or 0.*/
+        public static Metadata of(JRPC.IXboxConsole c, long capturedMillis, long durationNanos) {
+            String id;
+            long title, kernel;
+            try { id = XboxFeatures.getConsoleID(c); } catch (RuntimeException e) { id = ""; }
+            try { title = XboxFeatures.getTitleID(c); } catch (RuntimeException e) { title = 0; }
+            try { kernel = XboxFeatures.getKernelVersion(c); } catch (RuntimeException e) { kernel = 0; }
+            return new Metadata(id, title, kernel, capturedMillis, durationNanos);
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long id;
+    private final long baseId;
+    private final String baseName;
+    private final Metadata metadata;
+    private final long[] pageAddress;
+    private final int[] pageLength;
+    private final byte[] pageKind;
+    private final long[] pageOffset;
+    private final int[] storedLength;
+    private final Inflater inflater = new Inflater();
+    private SnapshotFile base;
+    private boolean ownsBase;
+
+    private SnapshotFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer trailer = ByteBuffer.allocate(12);
+            readFully(trailer, channel.size() - 12);
+            long indexOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC) throw new IOException("Not a snapshot file: " + path);
+            DataInputStream head = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+            try (head) {
+                if (head.readInt() != MAGIC) throw new IOException("Not a snapshot file: " + path);
+                int version = head.readUnsignedShort();
+                if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+                id = head.readLong();
+                baseId = head.readLong();
+                baseName = head.readUTF();
+                metadata = new Metadata(head.readUTF(), head.readLong(), head.readLong(), head.readLong(), head.readLong());
+            }
+            ByteBuffer index = ByteBuffer.allocate((int) (channel.size() - 12 - indexOffset));
+            readFully(index, indexOffset);
+            int n = index.getInt();
+            pageAddress = new long[n];
+            pageLength = new int[n];
+            pageKind = new byte[n];
+            pageOffset = new long[n];
+            storedLength = new int[n];
+            for (int i = 0; i < n; i++) {
+                pageAddress[i] = index.getLong();
+                pageLength[i] = index.getShort() & 0xFFFF;
+                if (pageLength[i] == 0) pageLength[i] = PAGE_SIZE;
+                pageKind[i] = index.get();
+                pageOffset[i] = index.getLong();
+                storedLength[i] = index.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**Opens a snapshot; a delta snapshot's base is looked up next to it by the file name it was written with.*/
+    public static SnapshotFile open(Path path) throws IOException {
+        SnapshotFile s = new SnapshotFile(path);
+        if (s.baseId != 0) {
+            Path sibling = path.resolveSibling(s.baseName);
+            if (Files.exists(sibling)) {
+                try {
+                    s.attachBase(open(sibling));
+                    s.ownsBase = true;
+                } catch (IOException e) {
+                    s.close();
+                    throw e;
+                }
+            }
+        }
+        return s;
+    }
+
+    /**Opens a delta snapshot against an already open base.*/
+    public static SnapshotFile open(Path path, SnapshotFile base) throws IOException {
+        SnapshotFile s = new SnapshotFile(path);
+        if (base != null) s.attachBase(base);
+        return s;
+    }
+
+    private void attachBase(SnapshotFile b) throws IOException {
+        if (b.id != baseId) throw new IOException(b.path + " is not the base of " + path);
+        this.base = b;
+    }
+
+    /**Captures ranges from the console into file, delta-encoded against base when it is not null.*/
+    public static void capture(JRPC.IXboxConsole c, Collection<MemoryRange> ranges, Path file, SnapshotFile base) throws IOException {
+        long millis = System.currentTimeMillis(), start = System.nanoTime();
+        MemoryDump dump = MemoryDump.read(c, ranges);
+        write(file, dump, Metadata.of(c, millis, System.nanoTime() - start), base);
+    }
+
+    public static void write(Path file, MemoryDump dump, Metadata meta, SnapshotFile base) throws IOException {
+        long id = ThreadLocalRandom.current().nextLong() | 1;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream headBytes = new ByteArrayOutputStream();
+            DataOutputStream head = new DataOutputStream(headBytes);
+            head.writeInt(MAGIC);
+            head.writeShort(VERSION);
+            head.writeLong(id);
+            head.writeLong(base != null ? base.id : 0);
+            head.writeUTF(base != null ? base.path.getFileName().toString() : "");
+            head.writeUTF(meta.consoleId() == null ? "" : meta.consoleId());
+            head.writeLong(meta.titleId());
+            head.writeLong(meta.kernelVersion());
+            head.writeLong(meta.capturedMillis());
+            head.writeLong(meta.durationNanos());
+            writeFully(out, ByteBuffer.wrap(headBytes.toByteArray()));
+
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            int pages = 0;
+            byte[] page = new byte[PAGE_SIZE], basePage = new byte[PAGE_SIZE], packed = new byte[PAGE_SIZE + 64];
+            for (int b = 0; b < dump.blockCount(); b++) {
+                ByteBuffer block = dump.block(b);
+                long start = dump.base(b), end = start + dump.length(b);
+                for (long a = start; a < end; ) {
+                    int len = (int) Math.min(end - a, PAGE_SIZE - (a & (PAGE_SIZE - 1)));
+                    block.get((int) (a - start), page, 0, len);
+                    byte kind = RAW;
+                    if (base != null && base.readPage(a, len, basePage)) {
+                        boolean same = true;
+                        for (int i = 0; i < len; i++) {
+                            page[i] ^= basePage[i];
+                            same &= page[i] == 0;
+                        }
+                        kind = same ? SAME : DELTA;
+                    }
+                    long offset = out.position();
+                    int stored = 0;
+                    if (kind != SAME) {
+                        deflater.reset();
+                        deflater.setInput(page, 0, len);
+                        deflater.finish();
+                        while (!deflater.finished()) {
+                            int n = deflater.deflate(packed, 0, packed.length);
+                            writeFully(out, ByteBuffer.wrap(packed, 0, n));
+                            stored += n;
+                        }
+                    }
+                    index.writeLong(a);
+                    index.writeShort(len == PAGE_SIZE ? 0 : len);
+                    index.writeByte(kind);
+                    index.writeLong(offset);
+                    index.writeInt(stored);
+                    pages++;
+                    a += len;
+                }
+            }
+            long indexOffset = out.position();
+            ByteBuffer count = ByteBuffer.allocate(4).putInt(pages);
+            writeFully(out, count.flip());
+            writeFully(out, ByteBuffer.wrap(indexBytes.toByteArray()));
+            writeFully(out, ByteBuffer.allocate(12).putLong(indexOffset).putInt(MAGIC).flip());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public Metadata metadata() {
+        return metadata;
+    }
+
+    /**Random id written into the file; delta snapshots refer to their base by it.*/
+    public long id() {
+        return id;
+    }
+
+    public boolean isDelta() {
+        return baseId != 0;
+    }
+
+    public int pageCount() {
+        return pageAddress.length;
+    }
+
+    /**Stored memory, adjacent pages joined.*/
+    public List<MemoryRange> ranges() {
+        List<MemoryRange> out = new ArrayList<>();
+        for (int i = 0; i < pageAddress.length; i++) out.add(new MemoryRange(pageAddress[i], pageLength[i]));
+        return MemoryRange.coalesce(out, 0);
+    }
+
+    /**Copies [address, address + length) into dst.
+     * @return false when part of the span is not in the snapshot*/
+    public synchronized boolean read(long address, byte[] dst, int off, int length) throws IOException {
+        byte[] page = new byte[PAGE_SIZE];
+        long end = address + length;
+        for (long a = address; a < end; ) {
+            int i = pageIndex(a);
+            if (i < 0 || !readPage(i, page)) return false;
+            int from = (int) (a - pageAddress[i]);
+            int n = (int) Math.min(end - a, pageLength[i] - from);
+            System.arraycopy(page, from, dst, off + (int) (a - address), n);
+            a += n;
+        }
+        return true;
+    }
+
+    //fills dst with the page stored at exactly this address and length
+    private synchronized boolean readPage(long address, int length, byte[] dst) throws IOException {
+        int i = Arrays.binarySearch(pageAddress, address);
+        return i >= 0 && pageLength[i] >= length && readPage(i, dst);
+    }
+
+    private boolean readPage(int i, byte[] dst) throws IOException {
+        int len = pageLength[i];
+        if (pageKind[i] != RAW) {
+            if (base == null) throw new IOException("Base snapshot " + baseName + " of " + path + " is not open");
+            if (!base.readPage(pageAddress[i], len, dst)) return false;
+            if (pageKind[i] == SAME) return true;
+        }
+        ByteBuffer stored = ByteBuffer.allocate(storedLength[i]);
+        readFully(stored, pageOffset[i]);
+        byte[] page = pageKind[i] == RAW ? dst : new byte[len];
+        inflater.reset();
+        inflater.setInput(stored.array());
+        try {
+            int n = 0;
+            while (n < len && !inflater.finished()) n += inflater.inflate(page, n, len - n);
+            if (n != len) throw new IOException("Corrupt page at 0x" + Long.toHexString(pageAddress[i]));
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt page at 0x" + Long.toHexString(pageAddress[i]), e);
+        }
+        if (pageKind[i] == DELTA) for (int k = 0; k < len; k++) dst[k] ^= page[k];
+        return true;
+    }
+
+    private int pageIndex(long address) {
+        int i = Arrays.binarySearch(pageAddress, address);
+        if (i < 0) i = -i - 2;
+        return i >= 0 && address < pageAddress[i] + pageLength[i] ? i : -1;
+    }
+
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) throw new EOFException(path.toString());
+            position += n;
+        }
+        dst.flip();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) out.write(src);
+    }
+
+    /**Closes this file and any base opened with it by open(Path).*/
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+        if (ownsBase) base.close();
+    }
+}
@@ -0,0 +1,67 @@
+package com.jjrpc.xdevkit;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**Parsing helpers for XBDM replies: multi-line "response follows" bodies and key=value lines.*/
+public final class XbdmResponse {
+
+    private XbdmResponse() {}
+
+    /**Body lines of a multi-line response, without the status line and the terminating ".".*/
+    public static List<String> lines(String response) {
+        List<String> out = new ArrayList<>();
+        if (response == null) return out;
+        String[] all = response.split("\\r?\\n");
+        for (int i = 1; i < all.length; i++) {
+            String l = all[i];
+            if (l.equals(".")) break;
+            if (!l.isBlank()) out.add(l);
+        }
+        return out;
+    }
+
+    /**Splits a line such as {@code name="xam.xex" base=0x81000000 size=0x5000} into lower-cased keys and raw values.
+     * Quoted values keep their spaces; bare flags map to "".*/
+    public static Map<String, String> fields(String line) {
+        Map<String, String> map = new LinkedHashMap<>();
+        int i = 0, n = line.length();
+        while (i < n) {
+            while (i < n && line.charAt(i) == ' ') i++;
+            int ks = i;
+            while (i < n && line.charAt(i) != '=' && line.charAt(i) != ' ') i++;
+            String key = line.substring(ks, i).toLowerCase(Locale.ROOT);
+            String value = "";
+            if (i < n && line.charAt(i) == '=') {
+                i++;
+                if (i < n && line.charAt(i) == '"') {
+                    int e = line.indexOf('"', i + 1);
+                    if (e < 0) e = n;
+                    value = line.substring(i + 1, e);
+                    i = Math.min(n, e + 1);
+                } else {
+                    int vs = i;
+                    while (i < n && line.charAt(i) != ' ') i++;
+                    value = line.substring(vs, i);
+                }
+            }
+            if (!key.isEmpty()) map.put(key, value);
+        }
+        return map;
+    }
+
+    /**Parses 0x-prefixed hex or plain decimal, as XBDM uses both; missing or malformed values give def.*/
+    public static long number(Map<String, String> fields, String key, long def) {
+        String v = fields.get(key);
+        if (v == null || v.isEmpty()) return def;
+        try {
+            if (v.startsWith("0x") || v.startsWith("0X")) return Long.parseUnsignedLong(v.substring(2), 16);
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
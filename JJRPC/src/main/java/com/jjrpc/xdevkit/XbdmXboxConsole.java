@@ -1,5 +1,7 @@
 package com.jjrpc.xdevkit;
 
+import com.jjrpc.ConsoleEvents;
+import com.jjrpc.Hex;
 import com.jjrpc.JRPC;
 
 import java.io.*;
@@ -72,24 +74,40 @@ public final class XbdmXboxConsole implements JRPC.IXboxConsole {
         if (connectionId != this.connectionId)
             throw new JRPC.ComException(0x82DA0007, "Bad connection id");
 
+        ConsoleEvents.Command ev = new ConsoleEvents.Command();
+        ev.begin();
+        String line = command.endsWith("\r\n") ? command : command.replaceAll("\n$", "") + "\r\n";
+        long received = 0;
+        boolean failed = true;
         try {
-            String line = command.endsWith("\r\n") ? command : command.replaceAll("\n$", "") + "\r\n";
             out.write(line);
             out.flush();
             String first = readLineOrThrow();
+            received += first.length() + 2;
             StringBuilder sb = new StringBuilder(first);
             String lower = first.toLowerCase(Locale.ROOT);
             if (lower.contains("response follows") || lower.contains("send binary data")) {
                 String l;
                 while ((l = in.readLine()) != null) {
+                    received += l.length() + 2;
                     if (l.equals(".")) break;
                     sb.append("\n").append(l);
                 }
             }
             outResponse[0] = sb.toString();
+            failed = false;
         } catch (IOException e) {
             closeQuietly();
             throw new JRPC.ComException(0x82DA0007, "I/O: " + e.getMessage());
+        } finally {
+            if (ev.shouldCommit()) {
+                ev.host = host;
+                ev.verb = ConsoleEvents.verbOf(command);
+                ev.bytesSent = line.length();
+                ev.bytesReceived = received;
+                ev.failed = failed;
+                ev.commit();
+            }
         }
     }
 
@@ -140,18 +158,22 @@ public final class XbdmXboxConsole implements JRPC.IXboxConsole {
     private final class DebugTarget implements JRPC.IXboxDebugTarget {
         @Override
         public void GetMemory(long address, long length, byte[] outBuf, long[] outRead) {
-            final String cmd = "getmem addr=0x" + Long.toHexString(address) + " length=" + length;
-            String[] holder = new String[1];
-            SendTextCommand(connectionId, cmd, holder);
-            String resp = holder[0] == null ? "" : holder[0];
-            String hex = extractField(resp, "data=");
-            int n = Math.min(outBuf.length, hex.length() / 2);
-            for (int i = 0; i < n; i++) {
-                int hi = Character.digit(hex.charAt(i * 2), 16);
-                int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
-                outBuf[i] = (byte) ((hi << 4) | lo);
+            ConsoleEvents.Memory ev = new ConsoleEvents.Memory();
+            ev.begin();
+            int n = 0;
+            boolean failed = true;
+            try {
+                final String cmd = "getmem addr=0x" + Long.toHexString(address) + " length=" + length;
+                String[] holder = new String[1];
+                SendTextCommand(connectionId, cmd, holder);
+                String resp = holder[0] == null ? "" : holder[0];
+                int at = resp.indexOf("data=");
+                n = at < 0 ? 0 : Hex.decode(resp, at + 5, outBuf, 0, outBuf.length);
+                if (outRead != null && outRead.length > 0) outRead[0] = n;
+                failed = false;
+            } finally {
+                commit(ev, "getmem", address, length, n, failed);
             }
-            if (outRead != null && outRead.length > 0) outRead[0] = n;
         }
 
         @Override
@@ -161,23 +183,30 @@ public final class XbdmXboxConsole implements JRPC.IXboxConsole {
 
         @Override
         public void SetMemory(long address, long length, byte[] data, long[] outWritten) {
-            StringBuilder hex = new StringBuilder(data.length * 2);
-            for (int i = 0;
-                 i < length && i < data.length;
-                 i++) {
-                hex.append(String.format("%02X", data[i]));
+            ConsoleEvents.Memory ev = new ConsoleEvents.Memory();
+            ev.begin();
+            boolean failed = true;
+            try {
+                String hex = Hex.encode(data, 0, (int) Math.min(length, data.length));
+                final String cmd = "setmem addr=0x" + Long.toHexString(address) + " data=" + hex;
+                String[] holder = new String[1];
+                SendTextCommand(connectionId, cmd, holder);
+                if (outWritten != null && outWritten.length > 0) outWritten[0] = Math.min(length, data.length);
+                failed = false;
+            } finally {
+                commit(ev, "setmem", address, length, failed ? 0 : Math.min(length, data.length), failed);
             }
-            final String cmd = "setmem addr=0x" + Long.toHexString(address) + " data=" + hex;
-            String[] holder = new String[1];
-            SendTextCommand(connectionId, cmd, holder);
-            if (outWritten != null && outWritten.length > 0) outWritten[0] = Math.min(length, data.length);
         }
 
-        private String extractField(String resp, String key) {
-            int i = resp.indexOf(key);
-            if (i < 0) return "";
-            int e = resp.indexOf(' ', i + key.length());
-            return resp.substring(i + key.length(), e < 0 ? resp.length() : e).trim();
+        private void commit(ConsoleEvents.Memory ev, String op, long address, long length, long bytes, boolean failed) {
+            if (!ev.shouldCommit()) return;
+            ev.host = host;
+            ev.operation = op;
+            ev.address = address;
+            ev.length = length;
+            ev.bytes = bytes;
+            ev.failed = failed;
+            ev.commit();
         }
     }
 }
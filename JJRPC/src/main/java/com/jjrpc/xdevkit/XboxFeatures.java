@@ -8,6 +8,10 @@ import java.util.regex.Pattern;
 
 public final class XboxFeatures {
 
+    private static final Pattern KEY_VALUE = Pattern.compile("(?i)(?:^|\\s)([a-z0-9_\\-]+)\\s*[:=]\\s*([^\\r\\n]+)");
+    private static final Pattern STATUS_PREFIX = Pattern.compile("(?i)^200-\\s*");
+    private static final Pattern LINE_BREAK = Pattern.compile("\\r?\\n");
+
     private XboxFeatures() {}
 
     public enum XboxColor {
@@ -39,7 +43,7 @@ public final class XboxFeatures {
     }
 
     public static String getBoxID(JRPC.IXboxConsole c) {
-        return strip200(sendRaw(c, "BOXID"));
+        return ConsoleInfo.of(c).getBoxId();
     }
 
     public static String getXUID(JRPC.IXboxConsole c) {
@@ -47,18 +51,17 @@ public final class XboxFeatures {
     }
 
     public static String getConsoleID(JRPC.IXboxConsole c) {
-        String s = sendRaw(c, "getconsoleid");
-        s = s.replace("200- ", "").trim();
-        s = s.replace("consoleid=", "").trim();
-        return s;
+        return ConsoleInfo.of(c).getConsoleId();
     }
 
     public static String getDMVersion(JRPC.IXboxConsole c) {
-        return strip200(sendRaw(c, "dmversion"));
+        return ConsoleInfo.of(c).getDMVersion();
     }
 
     public static String getConsoleType(JRPC.IXboxConsole c) {
-        return JRPC.ConsoleType(c);
+        String type = ConsoleInfo.of(c).getConsoleType();
+        //asking again surfaces the plugin's error
+        return type.isEmpty() ? JRPC.ConsoleType(c) : type;
     }
 
     public static long getTitleID(JRPC.IXboxConsole c) {
@@ -66,7 +69,8 @@ public final class XboxFeatures {
     }
 
     public static long getKernelVersion(JRPC.IXboxConsole c) {
-        return JRPC.GetKernelVersion(c);
+        long v = ConsoleInfo.of(c).getKernelVersion();
+        return v != 0 ? v : JRPC.GetKernelVersion(c);
     }
 
     public static String getCPUKey(JRPC.IXboxConsole c) {
@@ -86,6 +90,7 @@ public final class XboxFeatures {
     }
 
     public static void reboot(JRPC.IXboxConsole c, XboxReboot type) {
+        ConsoleInfo.invalidate(c);
         switch (type) {
             case Cold -> sendExpectOk(c, "magicboot cold");
             case Warm -> sendExpectOk(c, "magicboot warm");
@@ -97,31 +102,14 @@ public final class XboxFeatures {
     }
 
     public static String getSystemInfo(JRPC.IXboxConsole c, SystemInfo info) {
-        switch (info) {
-            case Type:
-                return strip200(sendRaw(c, "consoletype"));
-            default: {
-                String body = sendRaw(c, "systeminfo");
-                Map<String, String> map = parseKeyValueBlock(body);
-                return switch (info) {
-                    case HDD -> firstNonEmpty(map, "hdd", "hddinfo", "harddisk", "hard_drive");
-                    case Platform -> firstNonEmpty(map, "platform", "platform_id", "board", "console");
-                    case System -> firstNonEmpty(map, "system", "os", "name");
-                    case BaseKrnlVersion -> firstNonEmpty(map, "baseversion", "basekrnlversion", "base_kernel");
-                    case KrnlVersion -> firstNonEmpty(map, "krnlversion", "kernel", "kernelversion");
-                    case XDKVersion -> firstNonEmpty(map, "xdkversion", "xdks", "xdk");
-                    default -> body;
-                };
-            }
-        }
+        return ConsoleInfo.of(c).getSystemInfo(info);
     }
 
-    private static Map<String, String> parseKeyValueBlock(String response) {
+    static Map<String, String> parseKeyValueBlock(String response) {
         Map<String, String> map = new LinkedHashMap<>();
-        Pattern p = Pattern.compile("(?i)(?:^|\\s)([a-z0-9_\\-]+)\\s*[:=]\\s*([^\\r\\n]+)");
-        for (String line : response.split("\\r?\\n")) {
-            String cleaned = line.trim().replaceFirst("(?i)^200-\\s*", "");
-            Matcher m = p.matcher(cleaned);
+        for (String line : LINE_BREAK.split(response)) {
+            String cleaned = STATUS_PREFIX.matcher(line.trim()).replaceFirst("");
+            Matcher m = KEY_VALUE.matcher(cleaned);
             if (m.find()) {
                 map.put(m.group(1).toLowerCase(Locale.ROOT), m.group(2).trim());
             }
@@ -129,14 +117,6 @@ public final class XboxFeatures {
         return map;
     }
 
-    private static String firstNonEmpty(Map<String, String> map, String... keys) {
-        for (String k : keys) {
-            String v = map.get(k);
-            if (v != null && !v.isBlank()) return v;
-        }
-        return "";
-    }
-
     public static void xNotify(JRPC.IXboxConsole c, String message, JRPC.XNotiyLogo logo) {
         JRPC.XNotify(c, logo, message);
     }
@@ -157,7 +137,7 @@ public final class XboxFeatures {
         if (!r.startsWith("200")) {}
     }
 
-    private static String strip200(String line) {
+    static String strip200(String line) {
         if (line == null) return "";
         String s = line.trim();
         if (s.startsWith("200-")) s = s.substring(4).trim();